@@ -0,0 +1,70 @@
+package io.github.panzi.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.panzi.sql.config.Config;
+import io.github.panzi.sql.internal.ColumnName;
+
+/**
+ * QueryFragment.addArg and PositionalQueryFragment.generate by IN-list size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArgumentExpansionBenchmark {
+	@Param({ "1", "10", "100", "1000" })
+	public int inSize;
+
+	private long[] ids;
+	private List<Long> idList;
+	private PositionalQueryFragment fragment;
+
+	@Setup
+	public void setup() {
+		ids = new long[inSize];
+		idList = new ArrayList<>(inSize);
+		for (int index = 0; index < inSize; ++ index) {
+			ids[index] = index;
+			idList.add((long) index);
+		}
+		fragment = new PositionalQueryFragment("? IN (?)", new Object[] { new ColumnName("id"), ids });
+	}
+
+	@Benchmark
+	public List<Object> addArgArray() {
+		List<Object> args = new ArrayList<>();
+		QueryFragment.addArg(Config.POSTGRE_SQL, "narrow", new StringBuilder(), args, ids, true);
+		return args;
+	}
+
+	@Benchmark
+	public List<Object> addArgCollection() {
+		List<Object> args = new ArrayList<>();
+		QueryFragment.addArg(Config.POSTGRE_SQL, "narrow", new StringBuilder(), args, idList, true);
+		return args;
+	}
+
+	@Benchmark
+	public StringBuilder positionalGenerate() {
+		StringBuilder buf = new StringBuilder();
+		fragment.generate(Config.POSTGRE_SQL, "narrow", buf, new ArrayList<Object>());
+		return buf;
+	}
+}
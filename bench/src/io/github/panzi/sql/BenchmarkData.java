@@ -0,0 +1,168 @@
+package io.github.panzi.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+import io.github.panzi.sql.annotations.Meta;
+
+/**
+ * Entities and an in-process stub database for the benchmarks. Result sets are
+ * CachedRowSets, so no JDBC driver or database server is needed.
+ */
+public final class BenchmarkData {
+	private BenchmarkData() {}
+
+	@Meta(tableName = "narrow")
+	public static class Narrow {
+		public long id;
+		public String name;
+		public String email;
+		public int score;
+	}
+
+	@Meta(tableName = "wide")
+	public static class Wide {
+		public long id;
+		public String c01;
+		public String c02;
+		public String c03;
+		public String c04;
+		public String c05;
+		public String c06;
+		public String c07;
+		public Integer c08;
+		public Integer c09;
+		public Integer c10;
+		public Integer c11;
+		public Long c12;
+		public Long c13;
+		public Long c14;
+		public Boolean c15;
+	}
+
+	public static Class<?> entityClass(int columns) {
+		switch (columns) {
+		case 4:  return Narrow.class;
+		case 16: return Wide.class;
+		default: throw new IllegalArgumentException("no entity with " + columns + " columns");
+		}
+	}
+
+	public static Object newEntity(int columns, long id) {
+		if (columns == 4) {
+			Narrow entity = new Narrow();
+			entity.id = id;
+			entity.name = "name " + id;
+			entity.email = "user" + id + "@example.com";
+			entity.score = (int) id;
+			return entity;
+		}
+
+		Wide entity = new Wide();
+		entity.id = id;
+		entity.c01 = entity.c02 = entity.c03 = entity.c04 = "text " + id;
+		entity.c05 = entity.c06 = entity.c07 = "more text";
+		entity.c08 = entity.c09 = entity.c10 = entity.c11 = (int) id;
+		entity.c12 = entity.c13 = entity.c14 = id;
+		entity.c15 = Boolean.TRUE;
+		return entity;
+	}
+
+	/**
+	 * In-memory result set with the columns of the entity and the given number of rows.
+	 */
+	public static CachedRowSet rows(int columns, int rows) throws SQLException {
+		Class<?> cls = entityClass(columns);
+		java.lang.reflect.Field[] fields = cls.getFields();
+
+		CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+		RowSetMetaDataImpl meta = new RowSetMetaDataImpl();
+		meta.setColumnCount(fields.length);
+		for (int index = 0; index < fields.length; ++ index) {
+			meta.setColumnName(index + 1, fields[index].getName());
+			meta.setColumnType(index + 1, Types.JAVA_OBJECT);
+		}
+		rowSet.setMetaData(meta);
+
+		for (int row = 0; row < rows; ++ row) {
+			Object entity = newEntity(columns, row);
+			rowSet.moveToInsertRow();
+			for (int index = 0; index < fields.length; ++ index) {
+				try {
+					rowSet.updateObject(index + 1, fields[index].get(entity));
+				} catch (IllegalAccessException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			rowSet.insertRow();
+			rowSet.moveToCurrentRow();
+		}
+		rowSet.beforeFirst();
+
+		return rowSet;
+	}
+
+	/**
+	 * Connection that answers every query with an independent cursor over rows.
+	 */
+	public static Connection connection(final CachedRowSet rows) {
+		return (Connection) Proxy.newProxyInstance(BenchmarkData.class.getClassLoader(), new Class<?>[] { Connection.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				switch (method.getName()) {
+				case "prepareStatement":
+					return statement(rows);
+				case "getMetaData":
+					return Proxy.newProxyInstance(BenchmarkData.class.getClassLoader(), new Class<?>[] { DatabaseMetaData.class }, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							if (method.getName().equals("getDatabaseProductName")) {
+								return "PostgreSQL";
+							}
+							return defaultValue(method);
+						}
+					});
+				default:
+					return defaultValue(method);
+				}
+			}
+		});
+	}
+
+	private static PreparedStatement statement(final CachedRowSet rows) {
+		return (PreparedStatement) Proxy.newProxyInstance(BenchmarkData.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("executeQuery")) {
+					ResultSet rs = rows.createShared();
+					rs.beforeFirst();
+					return rs;
+				}
+				return defaultValue(method);
+			}
+		});
+	}
+
+	private static Object defaultValue(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,21 @@
+package io.github.panzi.sql;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all benchmarks (or those matching the first argument) with the GC
+ * profiler, which reports the allocation rate per operation.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+			.include(args.length > 0 ? args[0] : BenchmarkMain.class.getPackage().getName() + ".*Benchmark")
+			.addProfiler(GCProfiler.class)
+			.build();
+		new Runner(options).run();
+	}
+}
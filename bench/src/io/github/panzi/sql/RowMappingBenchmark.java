@@ -0,0 +1,86 @@
+package io.github.panzi.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.panzi.sql.config.Config;
+import io.github.panzi.sql.internal.EntityMapping;
+import io.github.panzi.sql.internal.LoadContext;
+import io.github.panzi.sql.internal.Util;
+
+/**
+ * QueryBuilder.getValues, LoadContext.load and SelectBuilder.all by column and
+ * row count. Rows come from an in-memory CachedRowSet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowMappingBenchmark {
+	@Param({ "4", "16" })
+	public int columns;
+
+	@Param({ "1", "100", "10000" })
+	public int rows;
+
+	private Class<?> cls;
+	private Object entity;
+	private CachedRowSet rowSet;
+	private String[] layout;
+	private QueryBuilder writeBuilder;
+	private QueryBuilder readBuilder;
+
+	@Setup
+	public void setup() throws SQLException {
+		cls = BenchmarkData.entityClass(columns);
+		entity = BenchmarkData.newEntity(columns, 1);
+		rowSet = BenchmarkData.rows(columns, rows);
+		layout = Util.getColumns(rowSet);
+		writeBuilder = new QueryBuilder(Config.POSTGRE_SQL);
+		Connection con = BenchmarkData.connection(rowSet);
+		readBuilder = QueryBuilder.query(con);
+	}
+
+	@Benchmark
+	public Map<String, Object> getValues() {
+		return writeBuilder.getValues(entity);
+	}
+
+	@Benchmark
+	public void load(Blackhole blackhole) throws SQLException {
+		rowSet.beforeFirst();
+		EntityMapping mapping = EntityMapping.get(cls);
+		LoadContext ctx = new LoadContext(null, writeBuilder.getFactory(), rowSet, layout, Collections.<String>emptySet());
+		while (rowSet.next()) {
+			Object object = mapping.newInstance();
+			ctx.load(object);
+			blackhole.consume(object);
+		}
+	}
+
+	@Benchmark
+	public List<?> selectAll() throws SQLException {
+		return readBuilder.from(cls).all();
+	}
+}
@@ -0,0 +1,75 @@
+package io.github.panzi.sql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.panzi.sql.config.Config;
+
+/**
+ * SelectBuilder.toSQL and NamedQueryFragment.generate by number of WHERE fragments.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlGenerationBenchmark {
+	@Param({ "1", "4", "16" })
+	public int whereCount;
+
+	private SelectBuilder<BenchmarkData.Narrow> select;
+	private NamedQueryFragment named;
+
+	@Setup
+	public void setup() {
+		SelectBuilder<BenchmarkData.Narrow> select = new QueryBuilder(Config.POSTGRE_SQL).from(BenchmarkData.Narrow.class);
+		StringBuilder query = new StringBuilder();
+		Map<String, Object> args = new HashMap<>();
+
+		for (int index = 0; index < whereCount; ++ index) {
+			if (index % 2 == 0) {
+				select = select.whereIs("name", "name " + index);
+			} else {
+				select = select.where("score > ?", index);
+			}
+
+			if (index > 0) {
+				query.append(" AND ");
+			}
+			query.append("score > :arg").append(index);
+			args.put("arg" + index, index);
+		}
+
+		this.select = select.order("id").limit(20);
+		this.named = new NamedQueryFragment(query.toString(), args);
+	}
+
+	@Benchmark
+	public String selectToSQL() {
+		List<Object> args = new ArrayList<>();
+		return select.toSQL(args);
+	}
+
+	@Benchmark
+	public StringBuilder namedGenerate() {
+		StringBuilder buf = new StringBuilder();
+		named.generate(Config.POSTGRE_SQL, "narrow", buf, new ArrayList<Object>());
+		return buf;
+	}
+}
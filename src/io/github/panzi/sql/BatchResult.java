@@ -0,0 +1,59 @@
+package io.github.panzi.sql;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Result of {@link QueryBuilder#insertAll(java.util.Collection)} and
+ * {@link QueryBuilder#updateAll(java.util.Collection)}. Update counts and
+ * generated keys are in the order of the passed rows.
+ */
+public class BatchResult {
+	private final int[] updateCounts;
+	private final Object[] generatedKeys;
+
+	public BatchResult(int[] updateCounts, Object[] generatedKeys) {
+		this.updateCounts = updateCounts;
+		this.generatedKeys = generatedKeys;
+	}
+
+	public int size() {
+		return updateCounts.length;
+	}
+
+	/**
+	 * Update count per row. May be {@link java.sql.Statement#SUCCESS_NO_INFO}
+	 * if the driver does not report counts per row.
+	 */
+	public int[] getUpdateCounts() {
+		return updateCounts;
+	}
+
+	public int getUpdateCount(int index) {
+		return updateCounts[index];
+	}
+
+	/**
+	 * Sum of all known update counts.
+	 */
+	public int getTotalUpdateCount() {
+		int total = 0;
+		for (int count : updateCounts) {
+			if (count > 0) {
+				total += count;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Generated key per row, or null where the driver did not report one.
+	 */
+	public List<Object> getGeneratedKeys() {
+		return Arrays.asList(generatedKeys);
+	}
+
+	public Object getGeneratedKey(int index) {
+		return generatedKeys[index];
+	}
+}
@@ -0,0 +1,12 @@
+package io.github.panzi.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Work that is done with a connection borrowed by
+ * {@link QueryBuilderFactory#async(ConnectionCallback)}.
+ */
+public interface ConnectionCallback<R> {
+	R call(Connection con) throws SQLException;
+}
@@ -0,0 +1,83 @@
+package io.github.panzi.sql;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+import java.util.stream.DoubleStream;
+
+/**
+ * Growable array of unboxed double values of a single column, filled by
+ * {@link SelectBuilder#pluckDoubles(String)}. NULL values are stored as 0 and
+ * marked in a bitmap that is only allocated if there are any.
+ */
+public final class DoubleColumn {
+	private double[] values;
+	private int size = 0;
+	private BitSet nulls = null;
+
+	DoubleColumn(int capacity) {
+		values = new double[Math.max(capacity, 16)];
+	}
+
+	void add(double value, boolean isNull) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size + (size >> 1));
+		}
+		if (isNull) {
+			if (nulls == null) {
+				nulls = new BitSet();
+			}
+			nulls.set(size);
+		}
+		values[size ++] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Value at index, 0 if it is NULL.
+	 */
+	public double get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		}
+		return values[index];
+	}
+
+	public boolean isNull(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		}
+		return nulls != null && nulls.get(index);
+	}
+
+	public boolean hasNulls() {
+		return nulls != null;
+	}
+
+	/**
+	 * Copy of the values, NULL values as 0.
+	 */
+	public double[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Stream of the non-NULL values.
+	 */
+	public DoubleStream stream() {
+		final double[] values = this.values;
+		if (nulls == null) {
+			return Arrays.stream(values, 0, size);
+		}
+
+		final BitSet nulls = this.nulls;
+		return IntStream.range(0, size).filter(index -> !nulls.get(index)).mapToDouble(index -> values[index]);
+	}
+}
@@ -0,0 +1,83 @@
+package io.github.panzi.sql;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Growable array of unboxed long values of a single column, filled by
+ * {@link SelectBuilder#pluckLongs(String)}. NULL values are stored as 0 and
+ * marked in a bitmap that is only allocated if there are any.
+ */
+public final class LongColumn {
+	private long[] values;
+	private int size = 0;
+	private BitSet nulls = null;
+
+	LongColumn(int capacity) {
+		values = new long[Math.max(capacity, 16)];
+	}
+
+	void add(long value, boolean isNull) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size + (size >> 1));
+		}
+		if (isNull) {
+			if (nulls == null) {
+				nulls = new BitSet();
+			}
+			nulls.set(size);
+		}
+		values[size ++] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Value at index, 0 if it is NULL.
+	 */
+	public long get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		}
+		return values[index];
+	}
+
+	public boolean isNull(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+		}
+		return nulls != null && nulls.get(index);
+	}
+
+	public boolean hasNulls() {
+		return nulls != null;
+	}
+
+	/**
+	 * Copy of the values, NULL values as 0.
+	 */
+	public long[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Stream of the non-NULL values.
+	 */
+	public LongStream stream() {
+		final long[] values = this.values;
+		if (nulls == null) {
+			return Arrays.stream(values, 0, size);
+		}
+
+		final BitSet nulls = this.nulls;
+		return IntStream.range(0, size).filter(index -> !nulls.get(index)).mapToLong(index -> values[index]);
+	}
+}
@@ -9,35 +9,17 @@ public class NamedQueryFragment extends QueryFragment {
 	private final Map<String, Object> args;
 	
 	public NamedQueryFragment(String query, Map<String, Object> args) {
-		super(query);
+		super(query, true);
 		this.args = args;
 	}
 
 	@Override
 	void generate(Config conf, String tablename, StringBuilder output, List<Object> outputArgs) {
-		final int len = query.length();
-		int prev = 0;
-		for (;;) {
-			final int sqlIndex = query.indexOf(':', prev);
-			if (sqlIndex == -1) {
-				break;
-			}
-			output.append(query, prev, sqlIndex);
-			int nameBegin = sqlIndex + 1;
-			int nameEnd = nameBegin;
-			while (nameEnd < len) {
-				char ch = query.charAt(nameEnd);
-				if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_') {
-					++ nameEnd;
-				} else {
-					break;
-				}
-			}
-			prev = nameEnd;
-			String name = query.substring(nameBegin, nameEnd);
-			Object arg = args.get(name);
-			addArg(conf, tablename, output, outputArgs, arg, true);
+		final int count = getPlaceholderCount();
+		for (int index = 0; index < count; ++ index) {
+			output.append(query, slices[index * 2], slices[index * 2 + 1]);
+			addArg(conf, tablename, output, outputArgs, args.get(names[index]), true);
 		}
-		output.append(query, prev, len);
+		output.append(query, slices[count * 2], slices[count * 2 + 1]);
 	}
 }
@@ -0,0 +1,55 @@
+package io.github.panzi.sql;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset paginated query, see {@link SelectBuilder#page(int, Order...)}.
+ * The cursor holds the key column values of the last row of the page and is
+ * all that is needed to fetch the next page, e.g. when passed to a client.
+ */
+public final class Page<T> {
+	private final List<T> items;
+	private final Order[] keys;
+	private final Object[] cursor;
+	private final int size;
+	private final boolean hasNext;
+
+	Page(List<T> items, Order[] keys, Object[] cursor, int size, boolean hasNext) {
+		this.items = Collections.unmodifiableList(items);
+		this.keys = keys;
+		this.cursor = cursor;
+		this.size = size;
+		this.hasNext = hasNext;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public Order[] getKeys() {
+		return keys.clone();
+	}
+
+	/**
+	 * Key column values of the last row, or null if the page is empty.
+	 */
+	public Object[] getCursor() {
+		return cursor == null ? null : cursor.clone();
+	}
+
+	/**
+	 * Requested page size. The last page may have fewer items.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	public boolean isEmpty() {
+		return items.isEmpty();
+	}
+}
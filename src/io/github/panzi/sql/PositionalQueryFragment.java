@@ -8,24 +8,20 @@ public class PositionalQueryFragment extends QueryFragment {
 	private final Object[] args;
 	
 	public PositionalQueryFragment(String query, Object[] args) {
-		super(query);
+		super(query, false);
+		if (args.length < getPlaceholderCount()) {
+			throw new IllegalArgumentException("query has " + getPlaceholderCount() + " placeholders, but only " + args.length + " arguments were supplied");
+		}
 		this.args = args;
 	}
 
 	@Override
 	void generate(Config conf, String tablename, StringBuilder output, List<Object> outputArgs) {
-		int prev = 0;
-		int argIndex = 0;
-		for (;;) {
-			final int sqlIndex = query.indexOf('?', prev);
-			if (sqlIndex == -1) {
-				break;
-			}
-			output.append(query, prev, sqlIndex);
-			prev = sqlIndex + 1;
-			Object arg = args[argIndex ++];
-			addArg(conf, tablename, output, outputArgs, arg, true);
+		final int count = getPlaceholderCount();
+		for (int index = 0; index < count; ++ index) {
+			output.append(query, slices[index * 2], slices[index * 2 + 1]);
+			addArg(conf, tablename, output, outputArgs, args[index], true);
 		}
-		output.append(query, prev, query.length());
+		output.append(query, slices[count * 2], slices[count * 2 + 1]);
 	}
 }
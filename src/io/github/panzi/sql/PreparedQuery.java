@@ -0,0 +1,175 @@
+package io.github.panzi.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import io.github.panzi.sql.internal.Param;
+import io.github.panzi.sql.internal.QueryTrace;
+import io.github.panzi.sql.internal.Util;
+
+/**
+ * Immutable, compiled query. The SQL is generated once by
+ * {@link SelectBuilder#compile()}, {@link UpdateArgs#compileUpdate()} or
+ * {@link UpdateArgs#compileInsert()}; binding values only copies the argument
+ * array, so a PreparedQuery can be shared between threads.
+ *
+ * <p>Parameters are always bound as a single value. Array or collection
+ * arguments that expand to IN-lists must be given when building the query,
+ * and {@link QueryBuilderBase#whereIs(String, Object)} can't switch to
+ * IS NULL for a parameter bound to null.</p>
+ *
+ * <pre>
+ * PreparedQuery&lt;User&gt; q = query.from(User.class).whereIs("id", param("id")).compile();
+ * User user = q.bind("id", 42).first();
+ * </pre>
+ */
+public final class PreparedQuery<T> {
+	private final Connection con;
+	private final QueryBuilderFactory factory;
+	private final QueryEvent.Operation operation;
+	private final String tableName;
+	private final Class<T> cls;
+	private final Set<String> include;
+	private final String sql;
+	private final Object[] args;
+
+	PreparedQuery(Connection con, QueryBuilderFactory factory, QueryEvent.Operation operation, String tableName,
+			Class<T> cls, Set<String> include, String sql, Object[] args) {
+		this.con = con;
+		this.factory = factory;
+		this.operation = operation;
+		this.tableName = tableName;
+		this.cls = cls;
+		this.include = include;
+		this.sql = sql;
+		this.args = args;
+	}
+
+	public String getSQL() {
+		return sql;
+	}
+
+	/**
+	 * Same query executed on another connection.
+	 */
+	public PreparedQuery<T> on(Connection con) {
+		return new PreparedQuery<T>(con, factory, operation, tableName, cls, include, sql, args);
+	}
+
+	public PreparedQuery<T> bind(String name, Object value) {
+		return bindKey(name, value);
+	}
+
+	/**
+	 * Binds a positional parameter created with {@link QueryBuilder#param(int)}.
+	 */
+	public PreparedQuery<T> bind(int index, Object value) {
+		return bindKey(index, value);
+	}
+
+	private PreparedQuery<T> bindKey(Object key, Object value) {
+		Object[] newArgs = null;
+		for (int index = 0; index < args.length; ++ index) {
+			Object arg = args[index];
+			if (arg instanceof Param && ((Param) arg).getKey().equals(key)) {
+				if (newArgs == null) {
+					newArgs = args.clone();
+				}
+				newArgs[index] = value;
+			}
+		}
+
+		if (newArgs == null) {
+			throw new IllegalArgumentException("no such parameter: " + key);
+		}
+
+		return new PreparedQuery<T>(con, factory, operation, tableName, cls, include, sql, newArgs);
+	}
+
+	private List<Object> getArgs() {
+		for (Object arg : args) {
+			if (arg instanceof Param) {
+				throw new IllegalStateException("parameter not bound: " + arg);
+			}
+		}
+		return Arrays.asList(args);
+	}
+
+	public PreparedStatement prepare() throws SQLException {
+		return Util.prepare(con, sql, getArgs());
+	}
+
+	private QueryTrace startTrace() {
+		return QueryTrace.start(factory, operation, tableName, null);
+	}
+
+	public ResultSet execute() throws SQLException {
+		QueryTrace trace = startTrace();
+		ResultSet rs = execute(trace);
+		trace.finish(-1);
+		return rs;
+	}
+
+	private ResultSet execute(QueryTrace trace) throws SQLException {
+		try {
+			trace.generated(sql, Arrays.asList(args));
+			PreparedStatement stmt = prepare();
+			try {
+				// close the statement together with the result set
+				stmt.closeOnCompletion();
+				trace.prepared();
+				ResultSet rs = stmt.executeQuery();
+				trace.executed();
+				return rs;
+			} catch (SQLException | RuntimeException e) {
+				stmt.close();
+				throw e;
+			}
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+	}
+
+	public int executeUpdate() throws SQLException {
+		QueryTrace trace = startTrace();
+		trace.generated(sql, Arrays.asList(args));
+		try (PreparedStatement stmt = prepare()) {
+			trace.prepared();
+			int count = stmt.executeUpdate();
+			trace.executed();
+			trace.finish(count);
+			return count;
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		} finally {
+			if (operation != QueryEvent.Operation.SELECT) {
+				factory.tableChanged(con, tableName);
+			}
+		}
+	}
+
+	public T first() throws SQLException {
+		return first(cls);
+	}
+
+	public<NewT> NewT first(Class<NewT> cls) throws SQLException {
+		QueryTrace trace = startTrace();
+		return SelectBuilder.fetchFirst(con, factory, execute(trace), cls, include, trace);
+	}
+
+	public List<T> all() throws SQLException {
+		return all(cls);
+	}
+
+	public<NewT> List<NewT> all(Class<NewT> cls) throws SQLException {
+		QueryTrace trace = startTrace();
+		return SelectBuilder.fetchAll(con, factory, execute(trace), cls, include, trace);
+	}
+}
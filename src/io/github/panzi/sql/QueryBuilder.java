@@ -1,26 +1,38 @@
 package io.github.panzi.sql;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 
-import io.github.panzi.sql.annotations.Field;
-import io.github.panzi.sql.annotations.Mapping;
 import io.github.panzi.sql.config.Config;
+import io.github.panzi.sql.internal.ChangeTracker;
 import io.github.panzi.sql.internal.ColumnName;
+import io.github.panzi.sql.internal.EntityMapping;
 import io.github.panzi.sql.internal.Name;
+import io.github.panzi.sql.internal.Param;
+import io.github.panzi.sql.internal.QueryTrace;
 import io.github.panzi.sql.internal.Util;
+import io.github.panzi.sql.internal.WriteShape;
 
 public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
+	/**
+	 * Maximum number of statements per JDBC batch.
+	 */
+	public static final int BATCH_SIZE = 1000;
+
+	private static final String ID = "id";
+
 	public static QueryBuilder query(Connection con) throws SQLException {
 		return new QueryBuilder(con);
 	}
@@ -33,6 +45,22 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 		return new ColumnName(name);
 	}
 
+	/**
+	 * Named bind slot for {@link SelectBuilder#compile()} and
+	 * {@link UpdateArgs#compileUpdate()}/{@link UpdateArgs#compileInsert()}.
+	 */
+	public static Param param(String name) {
+		return new Param(name);
+	}
+
+	/**
+	 * Positional (1-based) bind slot for {@link SelectBuilder#compile()} and
+	 * {@link UpdateArgs#compileUpdate()}/{@link UpdateArgs#compileInsert()}.
+	 */
+	public static Param param(int index) {
+		return new Param(index);
+	}
+
 	public static Order asc(String column) {
 		return new Order(column, true);
 	}
@@ -48,11 +76,31 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 	public QueryBuilder(Connection con) throws SQLException {
 		super(con);
 	}
+
+	public QueryBuilder(Connection con, Config config) {
+		super(con, config);
+	}
+
+	public QueryBuilder(Connection con, QueryBuilderFactory factory) {
+		super(con, factory);
+	}
 	
 	protected QueryBuilder(QueryBuilder builder, QueryFragment[] where) {
 		super(builder, where);
 	}
 
+	protected QueryBuilder(QueryBuilder builder, QueryBuilderFactory factory) {
+		super(builder, factory);
+	}
+
+	/**
+	 * Same builder with an additional {@link QueryListener} that is notified
+	 * of every statement executed through it and the builders derived from it.
+	 */
+	public QueryBuilder withListener(QueryListener listener) {
+		return new QueryBuilder(this, factory.withListener(listener));
+	}
+
 	public SelectBuilder<?> select() {
 		return new SelectBuilder<>(this, null, null, null, null, null, -1, -1);
 	}
@@ -106,6 +154,12 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 		return new UpdateArgs(this, tablename);
 	}
 
+	/**
+	 * Updates the row of the object by its id. If the class has
+	 * {@code @Meta(trackChanges = true)} and the object was loaded by a
+	 * query, only the columns that changed since then are written, and if
+	 * nothing changed no statement is executed and 0 is returned.
+	 */
 	public int update(Object object) throws SQLException {
 		return update(Util.getTableName(object.getClass()), object);
 	}
@@ -136,115 +190,19 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 	}
 
 	protected Map<String, Object> getValues(Object object) {
-		Map<String, Object> values = new HashMap<>();
-		Class<?> cls = object.getClass();
-		Map<String, Field> fieldDefs = Util.getFields(cls);
-		boolean onlyDeclared = Util.getOnlyDeclared(cls);
-
-		for (Method method : cls.getMethods()) {
-			String name = method.getName();
-			if (
-					method.getParameterTypes().length == 0 &&
-					!method.isVarArgs() &&
-					method.getDeclaringClass() != Object.class &&
-					name.length() > 3 &&
-					name.startsWith("get") &&
-					Character.isUpperCase(name.charAt(3))) {
-				String javaName = Character.toLowerCase(name.charAt(3)) + name.substring(4);
-				Field field = fieldDefs.get(javaName);
-				String columnName = "";
-				Mapping mapping = Mapping.VALUE;
-				if (field != null) {
-					columnName = field.columnName();
-					mapping = field.mapping();
-					
-					if (mapping != Mapping.BELONGS_TO) {
-						continue;
-					}
-				} else if (onlyDeclared) {
-					continue;
-				}
-
-				if (values.containsKey(columnName)) {
-					continue;
-				}
-
-				if (columnName.length() == 0) {
-					columnName = Util.toSnakeCase(javaName);
-					if (mapping == Mapping.BELONGS_TO) {
-						columnName += "_id";
-					}
-				}
-
-				Object value;
-				try {
-					value = method.invoke(object);
-				} catch (IllegalAccessException | IllegalArgumentException e) {
-					// didn't work, hope there's another getter or field with a compatible type
-					continue;
-				} catch (InvocationTargetException e) {
-					throw new RuntimeException(e);
-				}
-
-				if (value != null && mapping == Mapping.BELONGS_TO) {
-					value = Util.getId(value);
-				}
-
-				values.put(columnName, value);
-			}
-		}
-
-		for (java.lang.reflect.Field objField : cls.getFields()) {
-			if ((objField.getModifiers() & Modifier.TRANSIENT) == 0) {
-				String javaName = objField.getName();
-				Field field = fieldDefs.get(javaName);
-				String columnName = "";
-				Mapping mapping = Mapping.VALUE;
-				if (field != null) {
-					columnName = field.columnName();
-					mapping = field.mapping();
-					
-					if (mapping != Mapping.BELONGS_TO) {
-						continue;
-					}
-				} else if (onlyDeclared) {
-					continue;
-				}
-
-				if (values.containsKey(columnName)) {
-					continue;
-				}
-
-				if (columnName.length() == 0) {
-					columnName = Util.toSnakeCase(javaName);
-					if (mapping == Mapping.BELONGS_TO) {
-						columnName += "_id";
-					}
-				}
-
-				Object value;
-				try {
-					value = objField.get(object);
-				} catch (IllegalAccessException | IllegalArgumentException e) {
-					// didn't work, hope there's another field with a compatible type
-					continue;
-				}
-
-				if (value != null && mapping == Mapping.BELONGS_TO) {
-					value = Util.getId(value);
-				}
-
-				values.put(columnName, value);
-			}
-		}
-
-		return values;
+		return EntityMapping.get(object.getClass()).getValues(object);
 	}
 
 	public int update(String tablename, Object object) throws SQLException {
 		Map<String, Object> values = getValues(object);
 		Object id = values.remove("id");
-		return whereIs("id", id).update(tablename, values);
+		if (ChangeTracker.removeUnchanged(object, values) && values.isEmpty()) {
+			return 0;
+		}
+		Object[] snapshot = ChangeTracker.snapshot(object);
+		int count = whereIs("id", id).update(tablename, values);
+		ChangeTracker.put(object, snapshot);
+		return count;
 	}
 
 	public int update(Class<?> cls, Map<String, Object> values) throws SQLException {
@@ -252,11 +210,31 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 	}
 
 	public int update(String tablename, Map<String, Object> values) throws SQLException {
+		QueryTrace trace = QueryTrace.start(factory, QueryEvent.Operation.UPDATE, tablename, null);
 		List<Object> args = new ArrayList<>();
-		String sql = toUpdateSQL(tablename, values, args);
+		String sql;
+		try {
+			sql = toUpdateSQL(tablename, values, args);
+		} catch (RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		return executeUpdate(con, tablename, sql, args, trace);
+	}
 
+	private int executeUpdate(Connection con, String tablename, String sql, List<Object> args, QueryTrace trace) throws SQLException {
+		trace.generated(sql, args);
 		try (PreparedStatement stmt = Util.prepare(con, sql, args)) {
-			return stmt.executeUpdate();
+			trace.prepared();
+			int count = stmt.executeUpdate();
+			trace.executed();
+			trace.finish(count);
+			return count;
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		} finally {
+			factory.tableChanged(con, tablename);
 		}
 	}
 
@@ -264,39 +242,57 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 		return insert(Util.getTableName(cls), values);
 	}
 
+	/**
+	 * Inserts the object. If its id is null the id column is left out, and
+	 * the key generated by the database is written back into the id
+	 * property, see {@link #insertAll(Collection)}.
+	 */
 	public int insert(Object object) throws SQLException {
 		return insert(Util.getTableName(object.getClass()), object);
 	}
 
 	public int insert(String tablename, Object object) throws SQLException {
-		return insert(tablename, getValues(object));
+		return insertObjects(Collections.singletonList(tablename), Collections.singletonList(object)).getUpdateCount(0);
 	}
 
+	/**
+	 * Columns are written in the canonical order of {@link WriteShape}, so
+	 * the same column set always gives the same SQL.
+	 */
 	public String toUpdateSQL(String tablename, Map<String, Object> values, List<Object> outputArgs) {
 		if (values.isEmpty()) {
 			throw new IllegalArgumentException("no UPDATE values supplied");
 		}
+		WriteShape shape = WriteShape.get(config, tablename, values.keySet());
+		List<String> columns = shape.getColumns();
 		StringBuilder buf = new StringBuilder();
 
-		buf.append("UPDATE ");
-		config.escapeName(tablename, buf);
-		buf.append(" SET ");
-		
-		boolean first = true;
-		for (Entry<String, Object> entry : values.entrySet()) {
-			if (first) {
-				first = false;
-			} else {
-				buf.append(", ");
+		if (isScalar(values)) {
+			buf.append(shape.getUpdateSQL());
+			for (String column : columns) {
+				outputArgs.add(values.get(column));
+			}
+		} else {
+			buf.append("UPDATE ");
+			config.escapeName(tablename, buf);
+			buf.append(" SET ");
+
+			boolean first = true;
+			for (String column : columns) {
+				if (first) {
+					first = false;
+				} else {
+					buf.append(", ");
+				}
+				config.escapeName(column, buf);
+				buf.append(" = ");
+				QueryFragment.addArg(config, tablename, buf, outputArgs, values.get(column), false);
 			}
-			config.escapeName(entry.getKey(), buf);
-			buf.append(" = ");
-			QueryFragment.addArg(config, tablename, buf, outputArgs, entry.getValue(), false);
 		}
 
 		if (where != null && where.length > 0) {
 			buf.append(" WHERE (");
-			first = true;
+			boolean first = true;
 			for (QueryFragment fragment : where) {
 				if (first) {
 					first = false;
@@ -311,7 +307,6 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 		return buf.toString();
 	}
 
-	// TODO: return new ID
 	public String toInsertSQL(String tablename, Map<String, Object> values, List<Object> outputArgs) {
 		if (values.isEmpty()) {
 			throw new IllegalArgumentException("no INSERT values supplied");
@@ -321,25 +316,32 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 			throw new IllegalArgumentException("INSERT has no WHERE clause");
 		}
 
-		StringBuilder buf = new StringBuilder();
-		
-		buf.append("INSERT INTO ");
-		config.escapeName(tablename, buf);
-		buf.append(" (");
-		
-		boolean first = true;
-		for (String column : values.keySet()) {
-			if (first) {
-				first = false;
-			} else {
-				buf.append(", ");
+		WriteShape shape = WriteShape.get(config, tablename, values.keySet());
+		if (isScalar(values)) {
+			for (String column : shape.getColumns()) {
+				outputArgs.add(values.get(column));
 			}
-			config.escapeName(column, buf);
+			return shape.getInsertSQL();
 		}
-		
-		buf.append(") VALUES (");
-		first = true;
+
+		StringBuilder buf = new StringBuilder(shape.getInsertHead());
+		appendInsertRow(tablename, getRow(values, shape.getColumns()), buf, outputArgs);
+		return buf.toString();
+	}
+
+	private static boolean isScalar(Map<String, Object> values) {
 		for (Object value : values.values()) {
+			if (!WriteShape.isScalar(value)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void appendInsertRow(String tablename, Collection<Object> values, StringBuilder buf, List<Object> outputArgs) {
+		buf.append('(');
+		boolean first = true;
+		for (Object value : values) {
 			if (first) {
 				first = false;
 			} else {
@@ -347,18 +349,638 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 			}
 			QueryFragment.addArg(config, tablename, buf, outputArgs, value, false);
 		}
-		buf.append(")");
-		
-		return buf.toString();
+		buf.append(')');
 	}
 
 	public int insert(String tablename, Map<String, Object> values) throws SQLException {
+		QueryTrace trace = QueryTrace.start(factory, QueryEvent.Operation.INSERT, tablename, null);
+		List<Object> args = new ArrayList<>();
+		String sql;
+		try {
+			sql = toInsertSQL(tablename, values, args);
+		} catch (RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		return executeUpdate(con, tablename, sql, args, trace);
+	}
+
+	/**
+	 * Runs an INSERT of the object on a connection borrowed from the
+	 * DataSource of the {@link QueryBuilderFactory}. The values are read on
+	 * the calling thread, so later changes to the object don't race with it.
+	 */
+	public CompletableFuture<Integer> insertAsync(Object object) {
+		return insertAsync(Util.getTableName(object.getClass()), getInsertValues(object));
+	}
+
+	public CompletableFuture<Integer> insertAsync(String tablename, Map<String, Object> values) {
 		List<Object> args = new ArrayList<>();
 		String sql = toInsertSQL(tablename, values, args);
+		return executeUpdateAsync(QueryEvent.Operation.INSERT, tablename, sql, args);
+	}
+
+	/**
+	 * Asynchronous {@link #update(Object)}, see {@link #insertAsync(Object)}.
+	 */
+	public CompletableFuture<Integer> updateAsync(final Object object) {
+		Map<String, Object> values = getValues(object);
+		Object id = values.remove("id");
+		if (ChangeTracker.removeUnchanged(object, values) && values.isEmpty()) {
+			return CompletableFuture.completedFuture(0);
+		}
+		List<Object> args = new ArrayList<>();
+		String tablename = Util.getTableName(object.getClass());
+		String sql = whereIs("id", id).toUpdateSQL(tablename, values, args);
+		final Object[] snapshot = ChangeTracker.snapshot(object);
+		CompletableFuture<Integer> future = executeUpdateAsync(QueryEvent.Operation.UPDATE, tablename, sql, args);
+		if (snapshot == null) {
+			return future;
+		}
+		return future.thenApply(count -> {
+			ChangeTracker.put(object, snapshot);
+			return count;
+		});
+	}
+
+	public CompletableFuture<Integer> updateAsync(String tablename, Map<String, Object> values) {
+		List<Object> args = new ArrayList<>();
+		String sql = toUpdateSQL(tablename, values, args);
+		return executeUpdateAsync(QueryEvent.Operation.UPDATE, tablename, sql, args);
+	}
+
+	private CompletableFuture<Integer> executeUpdateAsync(QueryEvent.Operation operation, final String tablename, final String sql, final List<Object> args) {
+		final QueryTrace trace = QueryTrace.start(factory, operation, tablename, null);
+		return factory.async(con -> executeUpdate(con, tablename, sql, args, trace));
+	}
+
+	/**
+	 * Inserts the objects. Objects with a null id are inserted without the
+	 * id column, and the keys generated by the database are written back into
+	 * their id properties. Keys are read with a RETURNING/OUTPUT clause if the
+	 * dialect has one (see {@link Config#supportsReturning()}), otherwise
+	 * through JDBC generated keys, in the same round trip as the INSERT.
+	 */
+	public BatchResult insertAll(Collection<?> objects) throws SQLException {
+		List<String> tablenames = new ArrayList<>(objects.size());
+		for (Object object : objects) {
+			tablenames.add(Util.getTableName(object.getClass()));
+		}
+		return insertObjects(tablenames, objects);
+	}
+
+	public BatchResult insertAll(String tablename, Collection<?> objects) throws SQLException {
+		return insertObjects(Collections.nCopies(objects.size(), tablename), objects);
+	}
+
+	public BatchResult insertAll(Class<?> cls, List<Map<String, Object>> rows) throws SQLException {
+		return insertAll(Util.getTableName(cls), rows);
+	}
+
+	public BatchResult insertAll(String tablename, List<Map<String, Object>> rows) throws SQLException {
+		return insertRows(Collections.nCopies(rows.size(), tablename), rows, false);
+	}
+
+	private BatchResult insertObjects(List<String> tablenames, Collection<?> objects) throws SQLException {
+		List<Map<String, Object>> rows = new ArrayList<>(objects.size());
+		for (Object object : objects) {
+			rows.add(getInsertValues(object));
+		}
+
+		BatchResult result = insertRows(tablenames, rows, true);
+
+		int index = 0;
+		for (Object object : objects) {
+			Object key = result.getGeneratedKey(index);
+			if (key != null && !rows.get(index).containsKey(ID)) {
+				EntityMapping.get(object.getClass()).setId(object, key);
+			}
+			++ index;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Values of an object for INSERT. An unset id (null, or 0 for a primitive
+	 * id) is left out, so the database generates it.
+	 */
+	private Map<String, Object> getInsertValues(Object object) {
+		Map<String, Object> values = getValues(object);
+		if (values.containsKey(ID) && EntityMapping.get(object.getClass()).isUnsetId(values.get(ID))) {
+			values.remove(ID);
+		}
+		return values;
+	}
+
+	/**
+	 * Inserts rows grouped by table and column set. Each group is sent as
+	 * multi-row INSERT statements, as many rows per statement as the dialect's
+	 * bind parameter limit allows, or through JDBC batches if the dialect has
+	 * no multi-row VALUES.
+	 *
+	 * @param returnIds use the dialect's RETURNING clause for the id column
+	 *                  of groups that don't insert it; if the dialect returns
+	 *                  keys unordered and can't number them, those groups
+	 *                  are inserted through JDBC batches
+	 */
+	private BatchResult insertRows(List<String> tablenames, List<Map<String, Object>> rows, boolean returnIds) throws SQLException {
+		if (where != null && where.length > 0) {
+			throw new IllegalArgumentException("INSERT has no WHERE clause");
+		}
+
+		Map<List<Object>, List<Integer>> groups = new LinkedHashMap<>();
+		List<WriteShape> shapes = new ArrayList<>();
+		for (int index = 0; index < rows.size(); ++ index) {
+			Map<String, Object> values = rows.get(index);
+			if (values.isEmpty()) {
+				throw new IllegalArgumentException("no INSERT values supplied");
+			}
+			WriteShape shape = WriteShape.get(config, tablenames.get(index), values.keySet());
+			List<Object> key = Arrays.<Object>asList(tablenames.get(index), shape.getColumns());
+			List<Integer> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(key, group);
+				shapes.add(shape);
+			}
+			group.add(index);
+		}
+
+		int[] counts = new int[rows.size()];
+		Object[] keys = new Object[rows.size()];
+		int shapeIndex = 0;
+		for (List<Integer> group : groups.values()) {
+			String tablename = tablenames.get(group.get(0));
+			WriteShape shape = shapes.get(shapeIndex ++);
+
+			try {
+				if (config.supportsMultiRowInsert()) {
+					boolean returning = returnIds && config.supportsReturning() && !shape.getColumns().contains(ID);
+					if (returning && !config.isReturningOrdered() && !config.supportsNumberedReturning()) {
+						// keys can't be matched to the rows of a multi-row INSERT
+						insertBatch(tablename, shape, rows, group, counts, keys);
+					} else {
+						insertMultiRow(tablename, shape, rows, group, counts, keys, returning);
+					}
+				} else {
+					insertBatch(tablename, shape, rows, group, counts, keys);
+				}
+			} finally {
+				factory.tableChanged(con, tablename);
+			}
+		}
+
+		return new BatchResult(counts, keys);
+	}
+
+	private static List<Object> getRow(Map<String, Object> values, List<String> columns) {
+		List<Object> row = new ArrayList<>(columns.size());
+		for (String column : columns) {
+			row.add(values.get(column));
+		}
+		return row;
+	}
+
+	private void insertMultiRow(String tablename, WriteShape shape, List<Map<String, Object>> rows, List<Integer> group,
+			int[] counts, Object[] keys, boolean returning) throws SQLException {
+		List<String> columns = shape.getColumns();
+		final int maxParameters = config.getMaxParameters();
+		final int maxRows = config.getMaxInsertRows();
+		StringBuilder buf = new StringBuilder();
+		List<Object> args = new ArrayList<>();
+		boolean numbered = returning && !config.isReturningOrdered() && group.size() > 1;
+		int offset = 0;
+
+		while (offset < group.size()) {
+			QueryTrace trace = QueryTrace.start(factory, QueryEvent.Operation.INSERT, tablename, null);
+			buf.setLength(0);
+			args.clear();
+			if (numbered) {
+				config.appendNumberedInsertHead(tablename, buf);
+			} else if (returning) {
+				buf.append(shape.getInsertInto());
+				config.appendOutputClause(ID, buf);
+				buf.append(" VALUES ");
+			} else {
+				buf.append(shape.getInsertHead());
+			}
+
+			int end = offset;
+			while (end < group.size() && end - offset < maxRows) {
+				int bufMark = buf.length();
+				int argsMark = args.size();
+				if (end > offset) {
+					buf.append(", ");
+				}
+				appendInsertRow(tablename, getRow(rows.get(group.get(end)), columns), buf, args);
+				if (numbered) {
+					// row number as a literal last value, so it needs no parameter
+					buf.setLength(buf.length() - 1);
+					buf.append(", ").append(end - offset).append(')');
+				}
+
+				if (args.size() > maxParameters && end > offset) {
+					buf.setLength(bufMark);
+					args.subList(argsMark, args.size()).clear();
+					break;
+				}
+				++ end;
+			}
+
+			if (numbered) {
+				config.appendNumberedInsertTail(columns, ID, buf);
+				insertReturning(buf.toString(), args, group.subList(offset, end), counts, keys, true, trace);
+				offset = end;
+				continue;
+			} else if (returning) {
+				config.appendReturningClause(ID, buf);
+				insertReturning(buf.toString(), args, group.subList(offset, end), counts, keys, false, trace);
+				offset = end;
+				continue;
+			}
+
+			trace.generated(buf.toString(), args);
+			try (PreparedStatement stmt = Util.prepare(con, buf.toString(), args, getAutoGeneratedKeys())) {
+				trace.prepared();
+				int count = stmt.executeUpdate();
+				trace.executed();
+				int rowCount = end - offset;
+				for (int index = offset; index < end; ++ index) {
+					counts[group.get(index)] = count == rowCount ? 1 : Statement.SUCCESS_NO_INFO;
+				}
+				readGeneratedKeys(stmt, group.subList(offset, end), keys);
+				trace.fetched();
+				trace.finish(count);
+			} catch (SQLException | RuntimeException e) {
+				trace.fail(e);
+				throw e;
+			}
+
+			offset = end;
+		}
+	}
 
+	private void insertReturning(String sql, List<Object> args, List<Integer> rowIndices, int[] counts, Object[] keys,
+			boolean numbered, QueryTrace trace) throws SQLException {
+		trace.generated(sql, args);
 		try (PreparedStatement stmt = Util.prepare(con, sql, args)) {
-			return stmt.executeUpdate();
+			trace.prepared();
+			try (ResultSet rs = stmt.executeQuery()) {
+				trace.executed();
+				int count = numbered ? readNumberedKeys(rs, rowIndices, keys) : readKeys(rs, rowIndices, keys);
+				for (int index : rowIndices) {
+					counts[index] = count == rowIndices.size() ? 1 : Statement.SUCCESS_NO_INFO;
+				}
+				trace.fetched();
+				trace.finish(count);
+			}
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Inserts the rows of a group through JDBC batches. Array values expand
+	 * to a different number of placeholders, so the rows are batched by their
+	 * generated SQL, not just by their columns.
+	 */
+	private void insertBatch(String tablename, WriteShape shape, List<Map<String, Object>> rows, List<Integer> group,
+			int[] counts, Object[] keys) throws SQLException {
+		List<String> columns = shape.getColumns();
+		Map<String, List<Integer>> statements = new LinkedHashMap<>();
+		List<List<Object>> rowArgs = new ArrayList<>(Collections.<List<Object>>nCopies(rows.size(), null));
+		StringBuilder buf = new StringBuilder();
+		for (Integer row : group) {
+			List<Object> args = new ArrayList<>();
+			buf.setLength(0);
+			buf.append(shape.getInsertHead());
+			appendInsertRow(tablename, getRow(rows.get(row), columns), buf, args);
+
+			String sql = buf.toString();
+			List<Integer> statement = statements.get(sql);
+			if (statement == null) {
+				statement = new ArrayList<>();
+				statements.put(sql, statement);
+			}
+			statement.add(row);
+			rowArgs.set(row, args);
+		}
+
+		for (Entry<String, List<Integer>> entry : statements.entrySet()) {
+			insertBatch(tablename, entry.getKey(), entry.getValue(), rowArgs, counts, keys);
+		}
+	}
+
+	private void insertBatch(String tablename, String sql, List<Integer> group, List<List<Object>> rowArgs,
+			int[] counts, Object[] keys) throws SQLException {
+		QueryTrace trace = QueryTrace.start(factory, QueryEvent.Operation.INSERT, tablename, null);
+		trace.generated(sql, rowArgs.get(group.get(0)));
+
+		try (PreparedStatement stmt = Util.prepare(con, sql, rowArgs.get(group.get(0)), getAutoGeneratedKeys())) {
+			trace.prepared();
+			if (!factory.supportsBatchUpdates()) {
+				for (int index = 0; index < group.size(); ++ index) {
+					if (index > 0) {
+						Util.bind(stmt, rowArgs.get(group.get(index)));
+						trace.prepared();
+					}
+					counts[group.get(index)] = stmt.executeUpdate();
+					trace.executed();
+					readGeneratedKeys(stmt, group.subList(index, index + 1), keys);
+					trace.fetched();
+				}
+				trace.finish(group.size());
+				return;
+			}
+
+			int offset = 0;
+			while (offset < group.size()) {
+				int end = Math.min(offset + BATCH_SIZE, group.size());
+				for (int index = offset; index < end; ++ index) {
+					if (index > 0) {
+						Util.bind(stmt, rowArgs.get(group.get(index)));
+					}
+					stmt.addBatch();
+				}
+				trace.prepared();
+
+				int[] batchCounts = stmt.executeBatch();
+				trace.executed();
+				for (int index = offset; index < end; ++ index) {
+					counts[group.get(index)] = batchCounts[index - offset];
+				}
+				readGeneratedKeys(stmt, group.subList(offset, end), keys);
+				trace.fetched();
+				offset = end;
+			}
+			trace.finish(group.size());
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+	}
+
+	private int getAutoGeneratedKeys() {
+		return factory.supportsGeneratedKeys() ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS;
+	}
+
+	private void readGeneratedKeys(Statement stmt, List<Integer> rowIndices, Object[] keys) throws SQLException {
+		if (!factory.supportsGeneratedKeys()) {
+			return;
+		}
+
+		try (ResultSet rs = stmt.getGeneratedKeys()) {
+			if (rs != null) {
+				readKeys(rs, rowIndices, keys);
+			}
+		}
+	}
+
+	/**
+	 * Reads the id column (or the first column) of the result into keys.
+	 *
+	 * @return number of rows read
+	 */
+	private static int readKeys(ResultSet rs, List<Integer> rowIndices, Object[] keys) throws SQLException {
+		String[] columns = Util.getColumns(rs);
+		int keyIndex = 1;
+		for (int index = 0; index < columns.length; ++ index) {
+			if (columns[index].equalsIgnoreCase(ID)) {
+				keyIndex = index + 1;
+				break;
+			}
+		}
+
+		List<Object> generated = new ArrayList<>(rowIndices.size());
+		while (rs.next()) {
+			generated.add(rs.getObject(keyIndex));
+		}
+
+		// keys can only be assigned to rows if one was reported per row
+		if (generated.size() == rowIndices.size()) {
+			for (int index = 0; index < generated.size(); ++ index) {
+				keys[rowIndices.get(index)] = generated.get(index);
+			}
+		}
+		return generated.size();
+	}
+
+	/**
+	 * Reads (row number, key) pairs as returned by a statement written with
+	 * {@link Config#appendNumberedInsertTail(List, String, StringBuilder)}.
+	 */
+	private static int readNumberedKeys(ResultSet rs, List<Integer> rowIndices, Object[] keys) throws SQLException {
+		int count = 0;
+		while (rs.next()) {
+			int row = rs.getInt(1);
+			if (row >= 0 && row < rowIndices.size()) {
+				keys[rowIndices.get(row)] = rs.getObject(2);
+			}
+			++ count;
 		}
+		return count;
+	}
+
+	/**
+	 * Updates the objects by their ids. Objects that result in the same
+	 * UPDATE statement are sent together as JDBC batches, or one by one if the
+	 * driver doesn't support batches. Tracked objects that didn't change are
+	 * skipped and get an update count of 0, see {@link #update(Object)}.
+	 */
+	public BatchResult updateAll(Collection<?> objects) throws SQLException {
+		Map<String, List<Integer>> groups = new LinkedHashMap<>();
+		List<List<Object>> rowArgs = new ArrayList<>(objects.size());
+		List<String> tablenames = new ArrayList<>(objects.size());
+		List<Object> tracked = new ArrayList<>();
+		List<Object[]> snapshots = new ArrayList<>();
+
+		int rowIndex = 0;
+		for (Object object : objects) {
+			Map<String, Object> values = getValues(object);
+			Object id = values.remove("id");
+			if (ChangeTracker.removeUnchanged(object, values) && values.isEmpty()) {
+				rowArgs.add(null);
+				tablenames.add(null);
+				++ rowIndex;
+				continue;
+			}
+			Object[] snapshot = ChangeTracker.snapshot(object);
+			if (snapshot != null) {
+				tracked.add(object);
+				snapshots.add(snapshot);
+			}
+			List<Object> args = new ArrayList<>();
+			String tablename = Util.getTableName(object.getClass());
+			String sql = whereIs("id", id).toUpdateSQL(tablename, values, args);
+
+			List<Integer> group = groups.get(sql);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(sql, group);
+			}
+			group.add(rowIndex ++);
+			rowArgs.add(args);
+			tablenames.add(tablename);
+		}
+
+		int[] counts = executeGroups(QueryEvent.Operation.UPDATE, groups, rowArgs, tablenames);
+
+		for (int index = 0; index < tracked.size(); ++ index) {
+			ChangeTracker.put(tracked.get(index), snapshots.get(index));
+		}
+
+		return new BatchResult(counts, new Object[counts.length]);
+	}
+
+	/**
+	 * Inserts the object, or updates the existing row that has the same values
+	 * in conflictColumns (default: id), in a single statement. Requires a
+	 * dialect with {@link Config#supportsUpsert()}. A null id is left out, so
+	 * the database generates it on insert; the id of an existing row is never
+	 * updated.
+	 */
+	public int upsert(Object object, String... conflictColumns) throws SQLException {
+		return upsert(Util.getTableName(object.getClass()), getInsertValues(object), conflictColumns);
+	}
+
+	public int upsert(String tablename, Map<String, Object> values, String... conflictColumns) throws SQLException {
+		QueryTrace trace = QueryTrace.start(factory, QueryEvent.Operation.UPSERT, tablename, null);
+		List<Object> args = new ArrayList<>();
+		String sql;
+		try {
+			sql = toUpsertSQL(tablename, values, args, conflictColumns);
+		} catch (RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		return executeUpdate(con, tablename, sql, args, trace);
+	}
+
+	public String toUpsertSQL(String tablename, Map<String, Object> values, List<Object> outputArgs, String... conflictColumns) {
+		if (values.isEmpty()) {
+			throw new IllegalArgumentException("no UPSERT values supplied");
+		}
+
+		if (where != null && where.length > 0) {
+			throw new IllegalArgumentException("UPSERT has no WHERE clause");
+		}
+
+		List<String> conflict = conflictColumns.length == 0 ? Collections.singletonList("id") : Arrays.asList(conflictColumns);
+		for (String column : conflict) {
+			if (!values.containsKey(column)) {
+				throw new IllegalArgumentException("conflict column missing in UPSERT values: " + column);
+			}
+		}
+
+		List<String> columns = WriteShape.get(config, tablename, values.keySet()).getColumns();
+		List<String> exprs = new ArrayList<>(columns.size());
+		StringBuilder expr = new StringBuilder();
+		for (String column : columns) {
+			expr.setLength(0);
+			QueryFragment.addArg(config, tablename, expr, outputArgs, values.get(column), false);
+			exprs.add(expr.toString());
+		}
+
+		StringBuilder buf = new StringBuilder();
+		config.upsert(tablename, columns, exprs, conflict, buf);
+		return buf.toString();
+	}
+
+	/**
+	 * Upserts the objects, see {@link #upsert(Object, String...)}. Objects
+	 * that result in the same statement are sent together as JDBC batches.
+	 */
+	public BatchResult upsertAll(Collection<?> objects, String... conflictColumns) throws SQLException {
+		List<String> tablenames = new ArrayList<>(objects.size());
+		List<Map<String, Object>> rows = new ArrayList<>(objects.size());
+		for (Object object : objects) {
+			tablenames.add(Util.getTableName(object.getClass()));
+			rows.add(getInsertValues(object));
+		}
+		return upsertRows(tablenames, rows, conflictColumns);
+	}
+
+	public BatchResult upsertAll(String tablename, List<Map<String, Object>> rows, String... conflictColumns) throws SQLException {
+		return upsertRows(Collections.nCopies(rows.size(), tablename), rows, conflictColumns);
+	}
+
+	private BatchResult upsertRows(List<String> tablenames, List<Map<String, Object>> rows, String... conflictColumns) throws SQLException {
+		Map<String, List<Integer>> groups = new LinkedHashMap<>();
+		List<List<Object>> rowArgs = new ArrayList<>(rows.size());
+
+		for (int index = 0; index < rows.size(); ++ index) {
+			List<Object> args = new ArrayList<>();
+			String sql = toUpsertSQL(tablenames.get(index), rows.get(index), args, conflictColumns);
+
+			List<Integer> group = groups.get(sql);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(sql, group);
+			}
+			group.add(index);
+			rowArgs.add(args);
+		}
+
+		int[] counts = executeGroups(QueryEvent.Operation.UPSERT, groups, rowArgs, tablenames);
+		return new BatchResult(counts, new Object[counts.length]);
+	}
+
+	/**
+	 * Executes each group of rows with the same SQL as JDBC batches, or one by
+	 * one if the driver doesn't support batches.
+	 */
+	private int[] executeGroups(QueryEvent.Operation operation, Map<String, List<Integer>> groups, List<List<Object>> rowArgs,
+			List<String> tablenames) throws SQLException {
+		int[] counts = new int[rowArgs.size()];
+		for (Entry<String, List<Integer>> entry : groups.entrySet()) {
+			List<Integer> group = entry.getValue();
+			QueryTrace trace = QueryTrace.start(factory, operation, tablenames.get(group.get(0)), null);
+			trace.generated(entry.getKey(), rowArgs.get(group.get(0)));
+			try (PreparedStatement stmt = Util.prepare(con, entry.getKey(), rowArgs.get(group.get(0)))) {
+				trace.prepared();
+				if (!factory.supportsBatchUpdates()) {
+					for (int index = 0; index < group.size(); ++ index) {
+						if (index > 0) {
+							Util.bind(stmt, rowArgs.get(group.get(index)));
+							trace.prepared();
+						}
+						counts[group.get(index)] = stmt.executeUpdate();
+						trace.executed();
+					}
+					trace.finish(group.size());
+					continue;
+				}
+
+				int offset = 0;
+				while (offset < group.size()) {
+					int end = Math.min(offset + BATCH_SIZE, group.size());
+					for (int index = offset; index < end; ++ index) {
+						if (index > 0) {
+							Util.bind(stmt, rowArgs.get(group.get(index)));
+						}
+						stmt.addBatch();
+					}
+					trace.prepared();
+
+					int[] batchCounts = stmt.executeBatch();
+					trace.executed();
+					for (int index = offset; index < end; ++ index) {
+						counts[group.get(index)] = batchCounts[index - offset];
+					}
+					offset = end;
+				}
+				trace.finish(group.size());
+			} catch (SQLException | RuntimeException e) {
+				trace.fail(e);
+				throw e;
+			} finally {
+				factory.tableChanged(con, tablenames.get(group.get(0)));
+			}
+		}
+
+		return counts;
 	}
 
 	public<T> T first(Class<T> cls) throws SQLException {
@@ -368,6 +990,14 @@ public class QueryBuilder extends QueryBuilderBase<QueryBuilder> {
 	public<T> List<T> all(Class<T> cls) throws SQLException {
 		return from(cls).all();
 	}
+
+	public<T> CompletableFuture<T> firstAsync(Class<T> cls) {
+		return from(cls).firstAsync();
+	}
+
+	public<T> CompletableFuture<List<T>> allAsync(Class<T> cls) {
+		return from(cls).allAsync();
+	}
 	
 	public ResultSet execute() throws SQLException {
 		return select().execute();
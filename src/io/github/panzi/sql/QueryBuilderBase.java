@@ -14,32 +14,59 @@ import io.github.panzi.sql.internal.Util;
 public abstract class QueryBuilderBase<T extends QueryBuilderBase<?>> {
 	protected final Connection con;
 	protected final Config config;
+	protected final QueryBuilderFactory factory;
 	protected final QueryFragment[] where;
 
 	public QueryBuilderBase(Config config) {
-		this.con = null;
-		this.config = config;
-		this.where = null;
+		this((Connection) null, QueryBuilderFactory.forConfig(config));
 	}
 
+	/**
+	 * Resolves the dialect from the connection meta data, once per
+	 * connection object. Pools usually hand out a new connection object for
+	 * every borrow, so use {@link #QueryBuilderBase(Connection, Config)} or a
+	 * {@link QueryBuilderFactory} to avoid that driver call.
+	 */
 	public QueryBuilderBase(Connection con) throws SQLException {
+		this(con, QueryBuilderFactory.forConnection(con));
+	}
+
+	public QueryBuilderBase(Connection con, Config config) {
+		this(con, QueryBuilderFactory.forConfig(config));
+	}
+
+	public QueryBuilderBase(Connection con, QueryBuilderFactory factory) {
 		this.con = con;
-		this.config = Config.getConfig(con);
+		this.config = factory.getConfig();
+		this.factory = factory;
 		this.where = null;
 	}
 	
 	protected QueryBuilderBase(QueryBuilderBase<?> other) {
 		this.con = other.con;
 		this.config = other.config;
+		this.factory = other.factory;
 		this.where = other.where;
 	}
 	
+	protected QueryBuilderBase(QueryBuilderBase<?> other, QueryBuilderFactory factory) {
+		this.con = other.con;
+		this.config = factory.getConfig();
+		this.factory = factory;
+		this.where = other.where;
+	}
+
 	protected QueryBuilderBase(QueryBuilderBase<?> other, QueryFragment[] where) {
 		this.con = other.con;
 		this.config = other.config;
+		this.factory = other.factory;
 		this.where = where;
 	}
 
+	public QueryBuilderFactory getFactory() {
+		return factory;
+	}
+
 	public NamedArgs<T> where(String query) {
 		return new NamedArgs<T>(query, this);
 	}
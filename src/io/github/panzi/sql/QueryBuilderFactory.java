@@ -0,0 +1,342 @@
+package io.github.panzi.sql;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.sql.DataSource;
+
+import io.github.panzi.sql.config.Config;
+
+/**
+ * Creates query builders with a dialect and driver capabilities that are
+ * resolved only once. {@link QueryBuilder#query(Connection)} asks the driver
+ * for the database product name once per connection object, which can be a
+ * round trip, and pools usually hand out a new object for every borrow; a
+ * factory bound to a DataSource or connection pool does this once and shares
+ * the result with every builder and relation query it creates.
+ *
+ * <pre>
+ * QueryBuilderFactory factory = QueryBuilderFactory.create(dataSource);
+ * try (Connection con = factory.getConnection()) {
+ *     List&lt;User&gt; users = factory.query(con).from(User.class).include("topics").all();
+ * }
+ * </pre>
+ *
+ * <p>A factory bound to a DataSource also runs the asynchronous variants of
+ * the query methods, e.g. {@link SelectBuilder#allAsync()}. Each of them
+ * borrows its own connection, because a JDBC connection can't run two
+ * queries at once. They run on virtual threads if the JVM has them (Java 21+),
+ * otherwise on a cached thread pool; see {@link #withExecutor(Executor)}.</p>
+ */
+public final class QueryBuilderFactory {
+	private final DataSource dataSource;
+	private final Config config;
+	private final boolean batchUpdates;
+	private final boolean generatedKeys;
+	private final boolean arrays;
+	private final Executor executor;
+	private final boolean parallelIncludes;
+	private final QueryListener listener;
+	private final ResultCache resultCache;
+
+	private QueryBuilderFactory(DataSource dataSource, Config config, boolean batchUpdates, boolean generatedKeys, boolean arrays,
+			Executor executor, boolean parallelIncludes, QueryListener listener, ResultCache resultCache) {
+		this.dataSource = dataSource;
+		this.config = config;
+		this.batchUpdates = batchUpdates;
+		this.generatedKeys = generatedKeys;
+		this.arrays = arrays;
+		this.executor = executor;
+		this.parallelIncludes = parallelIncludes;
+		this.listener = listener;
+		this.resultCache = resultCache;
+	}
+
+	private static final class DefaultExecutor {
+		static final Executor INSTANCE = create();
+
+		private static Executor create() {
+			try {
+				Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) method.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				// no virtual threads before Java 21
+				return Executors.newCachedThreadPool(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "query-async");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Borrows one connection from the data source to resolve the dialect and
+	 * the driver capabilities.
+	 */
+	public static QueryBuilderFactory create(DataSource dataSource) throws SQLException {
+		try (Connection con = dataSource.getConnection()) {
+			return create(dataSource, con);
+		}
+	}
+
+	/**
+	 * Resolves the dialect and the driver capabilities from the connection.
+	 * The factory isn't bound to the connection, it can be used with other
+	 * connections to the same database.
+	 */
+	public static QueryBuilderFactory create(Connection con) throws SQLException {
+		return create(null, con);
+	}
+
+	/**
+	 * Factory for a known dialect. The driver is assumed to support batch
+	 * updates and generated keys.
+	 */
+	public static QueryBuilderFactory create(Config config) {
+		return new QueryBuilderFactory(null, config, true, true, config.supportsArrays(), null, false, null, null);
+	}
+
+	/**
+	 * Shared factories of the legacy constructors of {@link QueryBuilderBase},
+	 * which only take a connection or a dialect.
+	 */
+	private static final Map<Config, QueryBuilderFactory> CONFIG_FACTORIES = new ConcurrentHashMap<>();
+	private static final Map<Connection, Config> CONNECTION_CONFIGS = Collections.synchronizedMap(new WeakHashMap<Connection, Config>());
+
+	/**
+	 * Same as {@link #create(Config)}, but returns the same factory for the
+	 * same dialect.
+	 */
+	static QueryBuilderFactory forConfig(Config config) {
+		QueryBuilderFactory factory = CONFIG_FACTORIES.get(config);
+		if (factory == null) {
+			factory = create(config);
+			QueryBuilderFactory other = CONFIG_FACTORIES.putIfAbsent(config, factory);
+			if (other != null) {
+				factory = other;
+			}
+		}
+		return factory;
+	}
+
+	/**
+	 * Factory for the dialect of the connection. The dialect is resolved from
+	 * the connection meta data only once per connection object; a pool that
+	 * hands out a new wrapper for every borrow still pays for it each time.
+	 */
+	static QueryBuilderFactory forConnection(Connection con) throws SQLException {
+		Config config = CONNECTION_CONFIGS.get(con);
+		if (config == null) {
+			config = Config.getConfig(con);
+			CONNECTION_CONFIGS.put(con, config);
+		}
+		return forConfig(config);
+	}
+
+	private static QueryBuilderFactory create(DataSource dataSource, Connection con) throws SQLException {
+		DatabaseMetaData meta = con.getMetaData();
+		Config config = Config.getConfig(meta.getDatabaseProductName());
+		return new QueryBuilderFactory(dataSource, config,
+				meta.supportsBatchUpdates(),
+				meta.supportsGetGeneratedKeys(),
+				config.supportsArrays(),
+				null, false, null, null);
+	}
+
+	/**
+	 * Same factory, but asynchronous queries run on the given executor.
+	 */
+	public QueryBuilderFactory withExecutor(Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor may not be null");
+		}
+		return new QueryBuilderFactory(dataSource, config, batchUpdates, generatedKeys, arrays, executor, parallelIncludes, listener, resultCache);
+	}
+
+	/**
+	 * Whether included relations are loaded in parallel. The first relation
+	 * is loaded on the query's connection, each of the others on its own
+	 * connection from the data source. This only happens if the parent query
+	 * runs in auto-commit mode, because other connections wouldn't see the
+	 * uncommitted changes of its transaction. Disabled by default.
+	 *
+	 * <p>A caller holds its connection while it waits for the others. The pool
+	 * therefore needs more connections than there are concurrent queries with
+	 * includes, otherwise all of them can end up held by waiting callers and
+	 * the pool deadlocks. Queries with N relations run fully parallel only if
+	 * N connections per query are available.</p>
+	 */
+	public QueryBuilderFactory withParallelIncludes(boolean parallelIncludes) {
+		return new QueryBuilderFactory(dataSource, config, batchUpdates, generatedKeys, arrays, executor, parallelIncludes, listener, resultCache);
+	}
+
+	public boolean isParallelIncludes() {
+		return parallelIncludes;
+	}
+
+	/**
+	 * Same factory with an additional listener that is notified of every
+	 * statement executed by its builders.
+	 */
+	public QueryBuilderFactory withListener(QueryListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener may not be null");
+		}
+
+		QueryListener newListener;
+		if (this.listener == null) {
+			newListener = listener;
+		} else if (this.listener instanceof Multicast) {
+			newListener = ((Multicast) this.listener).add(listener);
+		} else {
+			newListener = new Multicast(new QueryListener[] { this.listener, listener });
+		}
+
+		return new QueryBuilderFactory(dataSource, config, batchUpdates, generatedKeys, arrays, executor, parallelIncludes, newListener, resultCache);
+	}
+
+	/**
+	 * Registered listener (all of them combined), or null if there is none.
+	 */
+	public QueryListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Same factory, but results of queries for entities with
+	 * {@code @Meta(cacheSeconds = ...)} are cached in the given cache.
+	 * Writes through the factory's builders invalidate the written table.
+	 */
+	public QueryBuilderFactory withResultCache(ResultCache resultCache) {
+		if (resultCache == null) {
+			throw new IllegalArgumentException("resultCache may not be null");
+		}
+		return new QueryBuilderFactory(dataSource, config, batchUpdates, generatedKeys, arrays, executor, parallelIncludes, listener, resultCache);
+	}
+
+	/**
+	 * Result cache, or null if there is none.
+	 */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Invalidates cached results of a table after it was written on con.
+	 */
+	void tableChanged(Connection con, String tablename) {
+		if (resultCache != null) {
+			resultCache.written(con, tablename);
+		}
+	}
+
+	private static final class Multicast implements QueryListener {
+		private final QueryListener[] listeners;
+
+		Multicast(QueryListener[] listeners) {
+			this.listeners = listeners;
+		}
+
+		Multicast add(QueryListener listener) {
+			QueryListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+			newListeners[listeners.length] = listener;
+			return new Multicast(newListeners);
+		}
+
+		@Override
+		public void onQuery(QueryEvent event) {
+			for (QueryListener listener : listeners) {
+				listener.onQuery(event);
+			}
+		}
+	}
+
+	public Executor getExecutor() {
+		return executor != null ? executor : DefaultExecutor.INSTANCE;
+	}
+
+	public QueryBuilder query(Connection con) {
+		return new QueryBuilder(con, this);
+	}
+
+	/**
+	 * Builder without a connection, for generating SQL and for the
+	 * asynchronous query methods, which borrow their own connections.
+	 */
+	public QueryBuilder query() {
+		return new QueryBuilder((Connection) null, this);
+	}
+
+	/**
+	 * Runs callback on the executor with a connection borrowed from the data
+	 * source. The connection is closed (returned to the pool) afterwards.
+	 * SQLExceptions complete the future exceptionally.
+	 *
+	 * @throws IllegalStateException if the factory isn't bound to a data source
+	 */
+	public <R> CompletableFuture<R> async(final ConnectionCallback<R> callback) {
+		if (dataSource == null) {
+			throw new IllegalStateException("factory is not bound to a DataSource");
+		}
+
+		return CompletableFuture.supplyAsync(() -> {
+			try (Connection con = getConnection()) {
+				return callback.call(con);
+			} catch (SQLException e) {
+				throw new CompletionException(e);
+			}
+		}, getExecutor());
+	}
+
+	/**
+	 * Connection from the bound data source. With a result cache it is
+	 * wrapped with {@link ResultCache#wrap(Connection)}, so writes in its
+	 * transactions are invalidated again when they are committed.
+	 *
+	 * @throws IllegalStateException if the factory isn't bound to a data source
+	 */
+	public Connection getConnection() throws SQLException {
+		if (dataSource == null) {
+			throw new IllegalStateException("factory is not bound to a DataSource");
+		}
+		Connection con = dataSource.getConnection();
+		return resultCache != null ? resultCache.wrap(con) : con;
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public Config getConfig() {
+		return config;
+	}
+
+	public boolean supportsBatchUpdates() {
+		return batchUpdates;
+	}
+
+	public boolean supportsGeneratedKeys() {
+		return generatedKeys;
+	}
+
+	public boolean supportsArrays() {
+		return arrays;
+	}
+}
@@ -0,0 +1,158 @@
+package io.github.panzi.sql;
+
+import java.util.List;
+
+/**
+ * Timings and details of one executed statement, see {@link QueryListener}.
+ * All durations are in nanoseconds. Phases that don't apply to a statement
+ * (e.g. mapping for an UPDATE) are 0.
+ */
+public final class QueryEvent {
+	public enum Operation {
+		SELECT,
+		INSERT,
+		UPDATE,
+		UPSERT
+	}
+
+	private final Operation operation;
+	private final String tableName;
+	private final String relationPath;
+	private final String sql;
+	private final List<Object> parameters;
+	private final long rowCount;
+	private final long generateNanos;
+	private final long prepareNanos;
+	private final long executeNanos;
+	private final long fetchNanos;
+	private final long mappingNanos;
+	private final long relationNanos;
+	private final long totalNanos;
+	private final Throwable error;
+
+	public QueryEvent(Operation operation, String tableName, String relationPath, String sql, List<Object> parameters, long rowCount,
+			long generateNanos, long prepareNanos, long executeNanos, long fetchNanos, long mappingNanos, long relationNanos,
+			long totalNanos, Throwable error) {
+		this.operation = operation;
+		this.tableName = tableName;
+		this.relationPath = relationPath;
+		this.sql = sql;
+		this.parameters = parameters;
+		this.rowCount = rowCount;
+		this.generateNanos = generateNanos;
+		this.prepareNanos = prepareNanos;
+		this.executeNanos = executeNanos;
+		this.fetchNanos = fetchNanos;
+		this.mappingNanos = mappingNanos;
+		this.relationNanos = relationNanos;
+		this.totalNanos = totalNanos;
+		this.error = error;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Main table of the statement, or null if unknown.
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Include path (e.g. "topics.owner") of a relation query, or null for
+	 * statements that weren't issued to load an included relation.
+	 */
+	public String getRelationPath() {
+		return relationPath;
+	}
+
+	/**
+	 * SQL text, or null if the statement failed before it was generated.
+	 */
+	public String getSQL() {
+		return sql;
+	}
+
+	/**
+	 * Values bound to the statement (the first row of a batch), or null if
+	 * the statement failed before it was generated.
+	 */
+	public List<Object> getParameters() {
+		return parameters;
+	}
+
+	public int getParameterCount() {
+		return parameters == null ? 0 : parameters.size();
+	}
+
+	/**
+	 * Rows read or update count, -1 if unknown (e.g. a result set returned
+	 * by execute() is consumed by the caller).
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Time spent generating the SQL text.
+	 */
+	public long getGenerateNanos() {
+		return generateNanos;
+	}
+
+	/**
+	 * Time spent preparing the statement and binding the parameters.
+	 */
+	public long getPrepareNanos() {
+		return prepareNanos;
+	}
+
+	public long getExecuteNanos() {
+		return executeNanos;
+	}
+
+	/**
+	 * Time spent in ResultSet.next() (and reading generated keys).
+	 */
+	public long getFetchNanos() {
+		return fetchNanos;
+	}
+
+	/**
+	 * Time spent creating objects from rows.
+	 */
+	public long getMappingNanos() {
+		return mappingNanos;
+	}
+
+	/**
+	 * Time spent loading included relations. The relation queries are
+	 * reported as events of their own.
+	 */
+	public long getRelationNanos() {
+		return relationNanos;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Exception the statement failed with, or null.
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	public boolean isFailed() {
+		return error != null;
+	}
+
+	@Override
+	public String toString() {
+		return operation + " " + tableName + (relationPath != null ? " (" + relationPath + ")" : "") +
+			": rows=" + rowCount + " total=" + totalNanos + "ns" + (error != null ? " error=" + error : "");
+	}
+}
@@ -1,6 +1,7 @@
 package io.github.panzi.sql;
 
 import java.lang.reflect.Array;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -9,9 +10,127 @@ import io.github.panzi.sql.internal.Name;
 
 public abstract class QueryFragment {
 	protected final String query;
+
+	/**
+	 * Offsets of the literal SQL around the placeholders: slice i is
+	 * query[slices[2*i], slices[2*i+1]) and is followed by placeholder i,
+	 * the last slice is followed by nothing.
+	 */
+	protected final int[] slices;
+
+	/**
+	 * Names of the placeholders if the fragment uses named parameters.
+	 */
+	protected final String[] names;
 	
-	public QueryFragment(String query) {
+	protected QueryFragment(String query, boolean named) {
 		this.query = query;
+
+		List<Integer> slices = new ArrayList<>();
+		List<String> names = named ? new ArrayList<String>() : null;
+		tokenize(query, slices, names);
+
+		this.slices = new int[slices.size()];
+		for (int index = 0; index < this.slices.length; ++ index) {
+			this.slices[index] = slices.get(index);
+		}
+		this.names = named ? names.toArray(new String[names.size()]) : null;
+	}
+
+	protected final int getPlaceholderCount() {
+		return slices.length / 2 - 1;
+	}
+
+	private static boolean isNameChar(char ch) {
+		return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+	}
+
+	/**
+	 * Splits query at ? (names == null) or :name placeholders. Placeholders in
+	 * string literals, quoted identifiers and comments are ignored, as are
+	 * PostgreSQL :: casts.
+	 */
+	private static void tokenize(String query, List<Integer> slices, List<String> names) {
+		final int len = query.length();
+		int prev = 0;
+		int index = 0;
+		slices.add(0);
+
+		while (index < len) {
+			char ch = query.charAt(index);
+			switch (ch) {
+			case '\'':
+			case '"':
+			case '`':
+				// string literal or quoted identifier, quotes are escaped by doubling them
+				++ index;
+				while (index < len) {
+					if (query.charAt(index ++) == ch) {
+						if (index < len && query.charAt(index) == ch) {
+							++ index;
+						} else {
+							break;
+						}
+					}
+				}
+				break;
+
+			case '-':
+				if (index + 1 < len && query.charAt(index + 1) == '-') {
+					int end = query.indexOf('\n', index + 2);
+					index = end < 0 ? len : end + 1;
+				} else {
+					++ index;
+				}
+				break;
+
+			case '/':
+				if (index + 1 < len && query.charAt(index + 1) == '*') {
+					int end = query.indexOf("*/", index + 2);
+					index = end < 0 ? len : end + 2;
+				} else {
+					++ index;
+				}
+				break;
+
+			case '?':
+				if (names == null) {
+					slices.add(index);
+					prev = index + 1;
+					slices.add(prev);
+				}
+				++ index;
+				break;
+
+			case ':':
+				if (names == null) {
+					++ index;
+				} else if (index + 1 < len && query.charAt(index + 1) == ':') {
+					// PostgreSQL cast
+					index += 2;
+				} else {
+					int nameBegin = index + 1;
+					int nameEnd = nameBegin;
+					while (nameEnd < len && isNameChar(query.charAt(nameEnd))) {
+						++ nameEnd;
+					}
+
+					if (nameEnd > nameBegin) {
+						slices.add(index);
+						names.add(query.substring(nameBegin, nameEnd));
+						prev = nameEnd;
+						slices.add(prev);
+					}
+					index = nameEnd;
+				}
+				break;
+
+			default:
+				++ index;
+			}
+		}
+
+		slices.add(len);
 	}
 	
 	abstract void generate(Config conf, String tablename, StringBuilder output, List<Object> outputArgs);
@@ -43,9 +162,9 @@ public abstract class QueryFragment {
 					for (Object item : coll) {
 						if (first) {
 							output.append('?');
+							first = false;
 						} else {
 							output.append(", ?");
-							first = false;
 						}
 						outputArgs.add(item);
 					}
@@ -0,0 +1,16 @@
+package io.github.panzi.sql;
+
+/**
+ * Receives an event after every statement executed by the builders, with the
+ * time spent in each phase. Register listeners with
+ * {@link QueryBuilderFactory#withListener(QueryListener)} or
+ * {@link QueryBuilder#withListener(QueryListener)}.
+ *
+ * <p>Listeners are called on the thread that ran the statement, which may be
+ * an executor thread for asynchronous queries and parallel relation loading,
+ * so they have to be thread safe. Exceptions thrown by a listener are passed
+ * on to the caller of the query.</p>
+ */
+public interface QueryListener {
+	void onQuery(QueryEvent event);
+}
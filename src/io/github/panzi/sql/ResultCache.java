@@ -0,0 +1,398 @@
+package io.github.panzi.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Opt-in second level cache of query results, shared by all builders of a
+ * {@link QueryBuilderFactory}.
+ *
+ * <p>Only queries of entities with {@code @Meta(cacheSeconds = ...)} are
+ * cached. The key is the generated SQL together with the bind arguments, the
+ * value is a disconnected copy of the result set that expires after the
+ * entity's cacheSeconds. At most maxEntries results are kept; the least
+ * recently used ones are evicted when the cache is full.</p>
+ *
+ * <p>Inserts, updates and upserts through {@link QueryBuilder} and
+ * {@link PreparedQuery} invalidate all cached results of the written table.
+ * A query that was already running when its table was invalidated doesn't
+ * put its result into the cache. Writes by other means, and changes to other
+ * tables that a cached query joins, are only picked up when the entry
+ * expires.</p>
+ *
+ * <p>Queries on connections that aren't in auto-commit mode bypass the cache,
+ * so uncommitted rows are never shared. Included relations are still
+ * queried. Writes in a transaction invalidate the table when they are
+ * executed, and again when the transaction ends, because a query on another
+ * connection in between caches the old rows. The end of a transaction is
+ * only seen on connections returned by {@link #wrap(Connection)}, which
+ * includes all connections that {@link QueryBuilderFactory} borrows from
+ * its DataSource; on other connections such rows are cached until they
+ * expire.</p>
+ *
+ * <pre>
+ * ResultCache cache = new ResultCache(1024);
+ * QueryBuilderFactory factory = QueryBuilderFactory.create(dataSource).withResultCache(cache);
+ * ...
+ * System.out.println(cache.getHitRatio());
+ * </pre>
+ */
+public final class ResultCache {
+	private final int maxEntries;
+	private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, Set<List<Object>>> tables = new HashMap<>();
+	private final Map<String, Long> generations = new HashMap<>();
+	private long epoch = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+	private long invalidations = 0;
+
+	private static final class Entry {
+		final String tablename;
+		final CachedRowSet rows;
+		final long expires;
+
+		Entry(String tablename, CachedRowSet rows, long expires) {
+			this.tablename = tablename;
+			this.rows = rows;
+			this.expires = expires;
+		}
+	}
+
+	private static final class Factory {
+		static final RowSetFactory INSTANCE = create();
+
+		private static RowSetFactory create() {
+			try {
+				return RowSetProvider.newFactory();
+			} catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	public ResultCache(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("illegal cache size: " + maxEntries);
+		}
+		this.maxEntries = maxEntries;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Hits divided by lookups, or 0 if there were no lookups yet.
+	 */
+	public synchronized double getHitRatio() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0.0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Entries removed because the cache was full.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Entries removed because they were older than their cacheSeconds.
+	 */
+	public synchronized long getExpirations() {
+		return expirations;
+	}
+
+	/**
+	 * Entries removed because their table was written.
+	 */
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	public synchronized void resetStatistics() {
+		hits = misses = evictions = expirations = invalidations = 0;
+	}
+
+	/**
+	 * Removes all cached results of the table.
+	 */
+	public synchronized void invalidate(String tablename) {
+		Long generation = generations.get(tablename);
+		generations.put(tablename, generation == null ? 1 : generation + 1);
+
+		Set<List<Object>> keys = tables.remove(tablename);
+		if (keys != null) {
+			for (List<Object> key : keys) {
+				entries.remove(key);
+			}
+			invalidations += keys.size();
+		}
+	}
+
+	/**
+	 * Connection that invalidates the tables written through it in a
+	 * transaction again on commit(), rollback() and close(), and when
+	 * auto-commit is switched back on.
+	 */
+	public Connection wrap(Connection con) {
+		return (Connection) Proxy.newProxyInstance(
+				ResultCache.class.getClassLoader(),
+				new Class<?>[] { Connection.class },
+				new ConnectionHandler(con));
+	}
+
+	/**
+	 * Invalidates a table after it was written on con. If con is in a
+	 * transaction and was returned by {@link #wrap(Connection)}, the table is
+	 * invalidated again when the transaction ends.
+	 */
+	void written(Connection con, String tablename) {
+		invalidate(tablename);
+
+		if (con == null) {
+			return;
+		}
+		try {
+			if (con.isWrapperFor(ConnectionHandler.class)) {
+				ConnectionHandler handler = con.unwrap(ConnectionHandler.class);
+				if (handler.getCache() == this && !con.getAutoCommit()) {
+					handler.written(tablename);
+				}
+			}
+		} catch (SQLException e) {
+			// called after the write, don't hide its outcome; the entries expire
+		}
+	}
+
+	public synchronized void clear() {
+		++ epoch;
+		invalidations += entries.size();
+		entries.clear();
+		tables.clear();
+	}
+
+	/**
+	 * Changes whenever the table is invalidated or the cache is cleared. Read
+	 * before executing a query and passed to
+	 * {@link #put(List, String, long, int, ResultSet)}.
+	 */
+	synchronized long getGeneration(String tablename) {
+		Long generation = generations.get(tablename);
+		return epoch + (generation == null ? 0 : generation);
+	}
+
+	/**
+	 * Cached result for key as a new result set with its own cursor, or null.
+	 */
+	ResultSet get(List<Object> key) throws SQLException {
+		CachedRowSet rows;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.expires - System.nanoTime() <= 0) {
+				remove(key, entry);
+				++ expirations;
+				entry = null;
+			}
+
+			if (entry == null) {
+				++ misses;
+				return null;
+			}
+			++ hits;
+			rows = entry.rows;
+		}
+		return open(rows);
+	}
+
+	/**
+	 * Reads rs into the cache and returns a result set over the cached rows.
+	 * rs is closed. The rows aren't cached if the table's generation changed
+	 * since the query started, because they may predate a write.
+	 */
+	ResultSet put(List<Object> key, String tablename, long generation, int seconds, ResultSet rs) throws SQLException {
+		CachedRowSet rows = Factory.INSTANCE.createCachedRowSet();
+		try (ResultSet data = rs) {
+			rows.populate(data);
+		}
+		long expires = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+		synchronized (this) {
+			if (getGeneration(tablename) != generation) {
+				return open(rows);
+			}
+
+			Entry old = entries.put(key, new Entry(tablename, rows, expires));
+			if (old != null && !old.tablename.equals(tablename)) {
+				unindex(key, old.tablename);
+			}
+			Set<List<Object>> keys = tables.get(tablename);
+			if (keys == null) {
+				keys = new HashSet<>();
+				tables.put(tablename, keys);
+			}
+			keys.add(key);
+
+			Iterator<Map.Entry<List<Object>, Entry>> iter = entries.entrySet().iterator();
+			while (entries.size() > maxEntries) {
+				Map.Entry<List<Object>, Entry> eldest = iter.next();
+				iter.remove();
+				unindex(eldest.getKey(), eldest.getValue().tablename);
+				++ evictions;
+			}
+		}
+
+		return open(rows);
+	}
+
+	/**
+	 * Result set with its own cursor over the cached rows. Closing a shared
+	 * CachedRowSet releases the rows of all its copies, so close() only
+	 * marks the view as closed.
+	 */
+	private static ResultSet open(CachedRowSet rows) throws SQLException {
+		return (ResultSet) Proxy.newProxyInstance(
+				ResultCache.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class },
+				new ResultSetHandler(rows.createShared()));
+	}
+
+	private static final class ResultSetHandler implements InvocationHandler {
+		private final ResultSet rs;
+		private boolean closed = false;
+
+		ResultSetHandler(ResultSet rs) {
+			this.rs = rs;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if (name.equals("close") && args == null) {
+				closed = true;
+				return null;
+			} else if (name.equals("isClosed") && args == null) {
+				return closed;
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (closed) {
+				throw new SQLException("result set is closed");
+			}
+
+			try {
+				return method.invoke(rs, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private final class ConnectionHandler implements InvocationHandler {
+		private final Connection con;
+		private final Set<String> written = new HashSet<>();
+
+		ConnectionHandler(Connection con) {
+			this.con = con;
+		}
+
+		ResultCache getCache() {
+			return ResultCache.this;
+		}
+
+		synchronized void written(String tablename) {
+			written.add(tablename);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if (name.equals("unwrap") && args[0] == ConnectionHandler.class) {
+				return this;
+			} else if (name.equals("isWrapperFor") && args[0] == ConnectionHandler.class) {
+				return true;
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+
+			// rollback(Savepoint) doesn't end the transaction, setAutoCommit(true) commits it
+			boolean ends = ((name.equals("commit") || name.equals("rollback") || name.equals("close")) && args == null) ||
+					(name.equals("setAutoCommit") && (Boolean) args[0]);
+			try {
+				return method.invoke(con, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				if (ends) {
+					ended();
+				}
+			}
+		}
+
+		private void ended() {
+			String[] tablenames;
+			synchronized (this) {
+				if (written.isEmpty()) {
+					return;
+				}
+				tablenames = written.toArray(new String[written.size()]);
+				written.clear();
+			}
+			for (String tablename : tablenames) {
+				invalidate(tablename);
+			}
+		}
+	}
+
+	private void remove(List<Object> key, Entry entry) {
+		entries.remove(key);
+		unindex(key, entry.tablename);
+	}
+
+	private void unindex(List<Object> key, String tablename) {
+		Set<List<Object>> keys = tables.get(tablename);
+		if (keys != null) {
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				tables.remove(tablename);
+			}
+		}
+	}
+}
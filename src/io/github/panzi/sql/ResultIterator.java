@@ -0,0 +1,175 @@
+package io.github.panzi.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import io.github.panzi.sql.config.Config;
+import io.github.panzi.sql.internal.LoadContext;
+import io.github.panzi.sql.internal.QueryTrace;
+import io.github.panzi.sql.internal.Util;
+
+/**
+ * Row by row iterator over an open result set. Only one row (or one batch of
+ * fetchSize rows if relations are included) is held in memory at a time.
+ * The iterator closes itself when exhausted.
+ *
+ * <p>If the dialect can't run other statements while a streamed result is
+ * open (MySQL), included relations are loaded on a second connection from
+ * the factory's DataSource. This requires auto-commit mode, because the
+ * second connection wouldn't see the changes of an open transaction.</p>
+ */
+public class ResultIterator<T> implements Iterator<T>, AutoCloseable {
+	private final Connection con;
+	private final Class<T> cls;
+	private final int batchSize;
+	private final ArrayDeque<T> buffer;
+	private PreparedStatement stmt;
+	private ResultSet rs;
+	private Connection relationCon;
+	private LoadContext ctx;
+	private boolean restoreAutoCommit = false;
+	private final QueryTrace trace;
+	private long rowCount = 0;
+
+	ResultIterator(Connection con, QueryBuilderFactory factory, Class<T> cls, Set<String> include, String sql, List<Object> args, int fetchSize,
+			QueryTrace trace) throws SQLException {
+		this.con = con;
+		this.trace = trace;
+		this.cls = cls;
+		this.batchSize = include.isEmpty() ? 1 : fetchSize;
+		this.buffer = new ArrayDeque<>(batchSize);
+		Config config = factory.getConfig();
+
+		try {
+			Connection relationCon = con;
+			if (!include.isEmpty() && config.streamingBlocksConnection()) {
+				if (factory.getDataSource() == null || !con.getAutoCommit()) {
+					throw new IllegalStateException("included relations of a streamed " + config.getClass().getSimpleName() +
+							" result need a factory bound to a DataSource and auto-commit mode, use all() instead");
+				}
+				this.relationCon = relationCon = factory.getConnection();
+			}
+
+			if (config.streamingNeedsTransaction() && con.getAutoCommit()) {
+				con.setAutoCommit(false);
+				restoreAutoCommit = true;
+			}
+
+			stmt = Util.prepare(con, sql, args);
+			stmt.setFetchSize(config.getStreamingFetchSize(fetchSize));
+			trace.prepared();
+			rs = stmt.executeQuery();
+			trace.executed();
+			ctx = new LoadContext(relationCon, factory, rs, Util.getColumns(rs), include);
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!buffer.isEmpty()) {
+			return true;
+		}
+
+		if (rs == null) {
+			return false;
+		}
+
+		try {
+			for (int count = 0; count < batchSize && rs.next(); ++ count) {
+				trace.fetched();
+				buffer.add(SelectBuilder.fetch(cls, ctx));
+				trace.mapped();
+				++ rowCount;
+			}
+			trace.fetched();
+			ctx.loadRelations();
+			trace.relationsLoaded();
+		} catch (SQLException e) {
+			trace.fail(e);
+			close();
+			throw new RuntimeException(e);
+		} catch (RuntimeException e) {
+			trace.fail(e);
+			close();
+			throw e;
+		}
+
+		if (buffer.isEmpty()) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return buffer.poll();
+	}
+
+	@Override
+	public void close() {
+		SQLException error = null;
+
+		if (rs != null) {
+			try {
+				rs.close();
+			} catch (SQLException e) {
+				error = e;
+			}
+			rs = null;
+		}
+
+		if (stmt != null) {
+			try {
+				stmt.close();
+			} catch (SQLException e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+			stmt = null;
+		}
+
+		if (relationCon != null) {
+			try {
+				relationCon.close();
+			} catch (SQLException e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+			relationCon = null;
+		}
+
+		if (restoreAutoCommit) {
+			restoreAutoCommit = false;
+			try {
+				con.setAutoCommit(true);
+			} catch (SQLException e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+		}
+
+		if (error != null) {
+			trace.fail(error);
+			throw new RuntimeException(error);
+		}
+		trace.finish(rowCount);
+	}
+}
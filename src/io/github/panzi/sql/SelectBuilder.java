@@ -3,20 +3,32 @@ package io.github.panzi.sql;
 import java.math.BigDecimal;
 import java.sql.Blob;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import io.github.panzi.sql.config.Config;
 import io.github.panzi.sql.internal.ColumnName;
+import io.github.panzi.sql.internal.EntityMapping;
+import io.github.panzi.sql.internal.EntityMeta;
 import io.github.panzi.sql.internal.LoadContext;
+import io.github.panzi.sql.internal.QueryTrace;
 import io.github.panzi.sql.internal.Util;
 
 public class SelectBuilder<T> extends QueryBuilderBase<SelectBuilder<T>> {
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
 	private final String tablename;
 	private final Class<T> cls;
 	private final String select;
@@ -187,6 +199,7 @@ public class SelectBuilder<T> extends QueryBuilderBase<SelectBuilder<T>> {
 	}
 	
 	public SelectBuilder<T> order(Order... order) {
+		String tablename = getTableName();
 		StringBuilder buf = new StringBuilder();
 		boolean first = true;
 		for (Order item : order) {
@@ -203,6 +216,184 @@ public class SelectBuilder<T> extends QueryBuilderBase<SelectBuilder<T>> {
 		return orderSQL(buf.toString());
 	}
 	
+	/**
+	 * Keyset (seek) pagination: orders by keys and only selects rows that come
+	 * after the row with the given key values. Unlike {@link #offset(long)}
+	 * the database doesn't have to read and discard the skipped rows if there
+	 * is an index on the key columns. The keys must not be NULL and have to be
+	 * unique in combination, e.g. end them with the id column. Replaces any
+	 * previous order.
+	 *
+	 * @param lastValues key values of the last row of the previous page, or null for the first page
+	 */
+	public SelectBuilder<T> seekAfter(Order[] keys, Object[] lastValues) {
+		if (keys.length == 0) {
+			throw new IllegalArgumentException("no keys supplied");
+		}
+
+		SelectBuilder<T> query = order(keys);
+		if (lastValues == null) {
+			return query;
+		}
+
+		if (lastValues.length != keys.length) {
+			throw new IllegalArgumentException("expected " + keys.length + " key values but got " + lastValues.length);
+		}
+
+		List<Object> args = new ArrayList<>();
+		StringBuilder buf = new StringBuilder();
+		if (isUniformOrder(keys) && config.supportsRowValueComparison()) {
+			// (a, b) > (?, ?)
+			buf.append('(');
+			for (int index = 0; index < keys.length; ++ index) {
+				if (index > 0) {
+					buf.append(", ");
+				}
+				buf.append('?');
+				args.add(new ColumnName(keys[index].getColumn()));
+			}
+			buf.append(keys[0].isAscending() ? ") > (" : ") < (");
+			for (int index = 0; index < keys.length; ++ index) {
+				if (index > 0) {
+					buf.append(", ");
+				}
+				buf.append('?');
+				args.add(lastValues[index]);
+			}
+			buf.append(')');
+		} else {
+			// a >= ? AND (a > ? OR (a = ? AND (b > ? OR (b = ? AND ...))))
+			// the leading a >= ? gives the database an index range to scan
+			Order first = keys[0];
+			buf.append(first.isAscending() ? "? >= ? AND (" : "? <= ? AND (");
+			args.add(new ColumnName(first.getColumn()));
+			args.add(lastValues[0]);
+
+			for (int index = 0; index < keys.length; ++ index) {
+				ColumnName column = new ColumnName(keys[index].getColumn());
+				buf.append(keys[index].isAscending() ? "? > ?" : "? < ?");
+				args.add(column);
+				args.add(lastValues[index]);
+
+				if (index + 1 < keys.length) {
+					buf.append(" OR (? = ? AND (");
+					args.add(column);
+					args.add(lastValues[index]);
+				}
+			}
+
+			for (int index = 1; index < keys.length; ++ index) {
+				buf.append("))");
+			}
+			buf.append(')');
+		}
+
+		return query.where(new PositionalQueryFragment(buf.toString(), args.toArray()));
+	}
+
+	private static boolean isUniformOrder(Order[] keys) {
+		for (Order key : keys) {
+			if (key.isAscending() != keys[0].isAscending()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * First page of a keyset paginated query.
+	 *
+	 * @see #seekAfter(Order[], Object[])
+	 */
+	public Page<T> page(int size, Order... keys) throws SQLException {
+		return pageAfterCursor(null, size, keys);
+	}
+
+	/**
+	 * Page after the row with the given key values (a cursor from
+	 * {@link Page#getCursor()}).
+	 */
+	public Page<T> pageAfterCursor(Object[] cursor, int size, Order... keys) throws SQLException {
+		if (size <= 0) {
+			throw new IllegalArgumentException("illegal page size: " + size);
+		}
+
+		List<T> items = new ArrayList<>(size);
+		Object[] last = null;
+		boolean hasNext = false;
+		LoadContext ctx;
+		QueryTrace trace = startTrace();
+
+		try (ResultSet rs = seekAfter(keys, cursor).limit(size + 1).execute(trace, 0)) {
+			String[] columns = Util.getColumns(rs);
+			int[] keyIndices = new int[keys.length];
+			for (int index = 0; index < keys.length; ++ index) {
+				String column = keys[index].getColumn();
+				for (int columnIndex = 0; columnIndex < columns.length; ++ columnIndex) {
+					if (columns[columnIndex].equals(column)) {
+						keyIndices[index] = columnIndex + 1;
+						break;
+					}
+				}
+				if (keyIndices[index] == 0) {
+					throw new IllegalArgumentException("key column is not selected: " + column);
+				}
+			}
+
+			ctx = new LoadContext(con, factory, rs, columns, getInclude());
+			while (rs.next()) {
+				trace.fetched();
+				if (items.size() == size) {
+					// the extra row only tells that there is a next page
+					hasNext = true;
+					break;
+				}
+				items.add(fetch(cls, ctx));
+
+				if (last == null) {
+					last = new Object[keys.length];
+				}
+				for (int index = 0; index < keyIndices.length; ++ index) {
+					last[index] = rs.getObject(keyIndices[index]);
+				}
+				trace.mapped();
+			}
+			trace.fetched();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		ctx.loadRelations();
+		trace.relationsLoaded();
+		trace.finish(items.size());
+
+		return new Page<T>(items, keys.clone(), last, size, hasNext);
+	}
+
+	/**
+	 * Page after the given row. The key values are read from the properties
+	 * mapped to the key columns.
+	 */
+	public Page<T> pageAfter(T lastRow, int size, Order... keys) throws SQLException {
+		EntityMapping mapping = EntityMapping.get(lastRow.getClass());
+		Object[] cursor = new Object[keys.length];
+		for (int index = 0; index < keys.length; ++ index) {
+			cursor[index] = mapping.getColumnValue(lastRow, keys[index].getColumn());
+		}
+		return pageAfterCursor(cursor, size, keys);
+	}
+
+	/**
+	 * Page after the given page, with the same size and keys.
+	 */
+	public Page<T> pageAfter(Page<T> page) throws SQLException {
+		Object[] cursor = page.getCursor();
+		if (cursor == null) {
+			return new Page<T>(new ArrayList<T>(), page.getKeys(), null, page.getSize(), false);
+		}
+		return pageAfterCursor(cursor, page.getSize(), page.getKeys());
+	}
+
 	public SelectBuilder<T> offset(long offset) {
 		return new SelectBuilder<T>(this, select, tablename, cls, include, order, offset, limit);
 	}
@@ -232,149 +423,141 @@ public class SelectBuilder<T> extends QueryBuilderBase<SelectBuilder<T>> {
 	}
 
 	@SuppressWarnings("unchecked")
-	private<Type> Type fetch(Class<Type> cls, LoadContext ctx) throws SQLException {
-		try {
-			if (cls == Byte.class || cls == byte.class) {
-				return (Type)(Byte)ctx.data.getByte(1);
-			} else if (cls == Short.class || cls == short.class) {
-				return (Type)(Short)ctx.data.getShort(1);
-			} else if (cls == Integer.class || cls == int.class) {
-				return (Type)(Integer)ctx.data.getInt(1);
-			} else if (cls == Long.class || cls == long.class) {
-				return (Type)(Long)ctx.data.getLong(1);
-			} else if (cls == Float.class || cls == float.class) {
-				return (Type)(Float)ctx.data.getFloat(1);
-			} else if (cls == Double.class || cls == double.class) {
-				return (Type)(Double)ctx.data.getDouble(1);
-			} else if (cls == Boolean.class || cls == boolean.class) {
-				return (Type)(Boolean)ctx.data.getBoolean(1);
-			} else if (cls == Character.class || cls == char.class) {
-				return (Type)(Character)ctx.data.getString(1).charAt(0);
-			} else if (cls == Object.class) {
-				return cls.cast(ctx.data.getObject(1));
-			} else if (cls == String.class) {
-				return cls.cast(ctx.data.getString(1));
-			} else if (cls == java.util.Date.class || cls == java.util.Date.class) {
-				return cls.cast(ctx.data.getDate(1));
-			} else if (cls == Blob.class) {
-				return cls.cast(ctx.data.getBlob(1));
-			} else if (cls == BigDecimal.class) {
-				return cls.cast(ctx.data.getBigDecimal(1));
-			} else if (cls.isArray()) {
-				if (cls == byte[].class) {
-					return cls.cast(ctx.data.getBytes(1));
-				} else if (cls == short[].class) {
-					short[] array = new short[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getShort(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == int[].class) {
-					int[] array = new int[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getInt(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == long[].class) {
-					long[] array = new long[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getLong(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == float[].class) {
-					float[] array = new float[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getFloat(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == double[].class) {
-					double[] array = new double[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getDouble(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == String[].class) {
-					String[] array = new String[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getString(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == char[].class) {
-					return cls.cast(ctx.data.getString(1).toCharArray());
-				} else if (cls == java.util.Date[].class) {
-					java.util.Date[] array = new java.util.Date[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getDate(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == java.sql.Date[].class) {
-					java.sql.Date[] array = new java.sql.Date[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getDate(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == Object[].class) {
-					Object[] array = new Object[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getObject(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == Byte[].class) {
-					Byte[] array = new Byte[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getByte(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == Short[].class) {
-					Short[] array = new Short[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getShort(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == Integer[].class) {
-					Integer[] array = new Integer[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getInt(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == Long[].class) {
-					Long[] array = new Long[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getLong(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == Float[].class) {
-					Float[] array = new Float[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getFloat(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == Double[].class) {
-					Double[] array = new Double[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getDouble(index + 1);
-					}
-					return cls.cast(array);
-				} else if (cls == Character[].class) {
-					Character[] array = new Character[ctx.availableColumns.size()];
-					for (int index = 0; index < array.length; ++ index) {
-						array[index] = ctx.data.getString(index + 1).charAt(0);
-					}
-					return cls.cast(array);
+	static<Type> Type fetch(Class<Type> cls, LoadContext ctx) throws SQLException {
+		if (cls == Byte.class || cls == byte.class) {
+			return (Type)(Byte)ctx.data.getByte(1);
+		} else if (cls == Short.class || cls == short.class) {
+			return (Type)(Short)ctx.data.getShort(1);
+		} else if (cls == Integer.class || cls == int.class) {
+			return (Type)(Integer)ctx.data.getInt(1);
+		} else if (cls == Long.class || cls == long.class) {
+			return (Type)(Long)ctx.data.getLong(1);
+		} else if (cls == Float.class || cls == float.class) {
+			return (Type)(Float)ctx.data.getFloat(1);
+		} else if (cls == Double.class || cls == double.class) {
+			return (Type)(Double)ctx.data.getDouble(1);
+		} else if (cls == Boolean.class || cls == boolean.class) {
+			return (Type)(Boolean)ctx.data.getBoolean(1);
+		} else if (cls == Character.class || cls == char.class) {
+			return (Type)(Character)ctx.data.getString(1).charAt(0);
+		} else if (cls == Object.class) {
+			return cls.cast(ctx.data.getObject(1));
+		} else if (cls == String.class) {
+			return cls.cast(ctx.data.getString(1));
+		} else if (cls == java.util.Date.class || cls == java.util.Date.class) {
+			return cls.cast(ctx.data.getDate(1));
+		} else if (cls == Blob.class) {
+			return cls.cast(ctx.data.getBlob(1));
+		} else if (cls == BigDecimal.class) {
+			return cls.cast(ctx.data.getBigDecimal(1));
+		} else if (cls.isArray()) {
+			if (cls == byte[].class) {
+				return cls.cast(ctx.data.getBytes(1));
+			} else if (cls == short[].class) {
+				short[] array = new short[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getShort(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == int[].class) {
+				int[] array = new int[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getInt(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == long[].class) {
+				long[] array = new long[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getLong(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == float[].class) {
+				float[] array = new float[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getFloat(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == double[].class) {
+				double[] array = new double[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getDouble(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == String[].class) {
+				String[] array = new String[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getString(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == char[].class) {
+				return cls.cast(ctx.data.getString(1).toCharArray());
+			} else if (cls == java.util.Date[].class) {
+				java.util.Date[] array = new java.util.Date[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getDate(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == java.sql.Date[].class) {
+				java.sql.Date[] array = new java.sql.Date[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getDate(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == Object[].class) {
+				Object[] array = new Object[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getObject(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == Byte[].class) {
+				Byte[] array = new Byte[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getByte(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == Short[].class) {
+				Short[] array = new Short[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getShort(index + 1);
 				}
-				throw new IllegalArgumentException("unhandeled type: " + cls.getName());
-			} else if (cls.isPrimitive()) {
-				throw new IllegalArgumentException("unhandeled type: " + cls.getName());
+				return cls.cast(array);
+			} else if (cls == Integer[].class) {
+				Integer[] array = new Integer[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getInt(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == Long[].class) {
+				Long[] array = new Long[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getLong(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == Float[].class) {
+				Float[] array = new Float[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getFloat(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == Double[].class) {
+				Double[] array = new Double[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getDouble(index + 1);
+				}
+				return cls.cast(array);
+			} else if (cls == Character[].class) {
+				Character[] array = new Character[ctx.columns.length];
+				for (int index = 0; index < array.length; ++ index) {
+					array[index] = ctx.data.getString(index + 1).charAt(0);
+				}
+				return cls.cast(array);
 			}
-
-			Type object = cls.newInstance();
-			ctx.load(object);
-			return object;
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
-		} catch (InstantiationException e) {
-			throw new RuntimeException(e);
+			throw new IllegalArgumentException("unhandeled type: " + cls.getName());
+		} else if (cls.isPrimitive()) {
+			throw new IllegalArgumentException("unhandeled type: " + cls.getName());
 		}
+
+		return cls.cast(ctx.create(cls));
 	}
 	
 	private Set<String> getInclude() {
@@ -388,15 +571,37 @@ public class SelectBuilder<T> extends QueryBuilderBase<SelectBuilder<T>> {
 	}
 
 	public<NewT> NewT first(Class<NewT> cls) throws SQLException {
-		try (ResultSet rs = execute()) {
-			if (rs.next()) {
-				Set<String> columns = getColumns(rs);
-				Set<String> include = getInclude();
-				LoadContext ctx = new LoadContext(con, rs, columns, include);
-				return fetch(cls, ctx);
+		QueryTrace trace = startTrace();
+		return fetchFirst(con, factory, execute(trace, 0, 1), cls, getInclude(), trace);
+	}
+
+	static<Type> Type fetchFirst(Connection con, QueryBuilderFactory factory, ResultSet data, Class<Type> cls, Set<String> include, QueryTrace trace) throws SQLException {
+		Type object;
+		LoadContext ctx;
+		try (ResultSet rs = data) {
+			boolean found = rs.next();
+			trace.fetched();
+			if (!found) {
+				trace.finish(0);
+				return null;
 			}
-			return null;
+			String[] columns = Util.getColumns(rs);
+			ctx = new LoadContext(con, factory, rs, columns, include);
+			object = fetch(cls, ctx);
+			trace.mapped();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
 		}
+		try {
+			ctx.loadRelations();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		trace.relationsLoaded();
+		trace.finish(1);
+		return object;
 	}
 
 	public void load(T object) throws SQLException {
@@ -409,43 +614,297 @@ public class SelectBuilder<T> extends QueryBuilderBase<SelectBuilder<T>> {
 			cls = object.getClass();
 		}
 
-		try (ResultSet rs = execute()) {
-			if (rs.next()) {
-				Set<String> columns = getColumns(rs);
-				Set<String> include = getInclude();
-				LoadContext ctx = new LoadContext(con, rs, columns, include);
-				ctx.load(object);
-				return;
+		LoadContext ctx;
+		QueryTrace trace = startTrace();
+		try (ResultSet rs = execute(trace, 0)) {
+			boolean found = rs.next();
+			trace.fetched();
+			if (!found) {
+				throw new RecordNotFoundException();
 			}
+			String[] columns = Util.getColumns(rs);
+			Set<String> include = getInclude();
+			ctx = new LoadContext(con, factory, rs, columns, include);
+			ctx.load(object);
+			trace.mapped();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		try {
+			ctx.loadRelations();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
 		}
-		throw new RecordNotFoundException();
+		trace.relationsLoaded();
+		trace.finish(1);
 	}
 
 	public List<T> all() throws SQLException {
-		List<T> result = new ArrayList<>();
-		try (ResultSet rs = execute()) {
-			Set<String> columns = getColumns(rs);
-			Set<String> include = getInclude();
-			LoadContext ctx = new LoadContext(con, rs, columns, include);
+		QueryTrace trace = startTrace();
+		return fetchAll(con, factory, execute(trace, 0), cls, getInclude(), trace);
+	}
+
+	/**
+	 * Runs {@link #all()} on a connection borrowed from the DataSource of the
+	 * {@link QueryBuilderFactory}. The SQL is generated on the calling thread.
+	 */
+	public CompletableFuture<List<T>> allAsync() {
+		final PreparedQuery<T> query = compile();
+		return factory.async(con -> query.on(con).all());
+	}
+
+	/**
+	 * Runs {@link #first()} on a connection borrowed from the DataSource of
+	 * the {@link QueryBuilderFactory}.
+	 */
+	public CompletableFuture<T> firstAsync() {
+		final PreparedQuery<T> query = compile();
+		return factory.async(con -> query.on(con).first());
+	}
+
+	static<Type> List<Type> fetchAll(Connection con, QueryBuilderFactory factory, ResultSet data, Class<Type> cls, Set<String> include, QueryTrace trace) throws SQLException {
+		List<Type> result = new ArrayList<>();
+		LoadContext ctx;
+		try (ResultSet rs = data) {
+			String[] columns = Util.getColumns(rs);
+			ctx = new LoadContext(con, factory, rs, columns, include);
 			while (rs.next()) {
+				trace.fetched();
 				result.add(fetch(cls, ctx));
+				trace.mapped();
+			}
+			trace.fetched();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		try {
+			ctx.loadRelations();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		trace.relationsLoaded();
+		trace.finish(result.size());
+		return result;
+	}
+
+	private SelectBuilder<T> pluckQuery(String column) {
+		return new SelectBuilder<T>(this, null, tablename, cls, include, order, offset, limit).columns(column);
+	}
+
+	private int getPluckCapacity() {
+		return limit >= 0 && limit <= DEFAULT_FETCH_SIZE * 1024 ? (int) limit : DEFAULT_FETCH_SIZE;
+	}
+
+	/**
+	 * Values of a single column as unboxed longs. Unlike all() with
+	 * Long.class this creates no object per row.
+	 */
+	public LongColumn pluckLongs(String column) throws SQLException {
+		LongColumn result = new LongColumn(getPluckCapacity());
+		QueryTrace trace = startTrace();
+		try (ResultSet rs = pluckQuery(column).execute(trace, DEFAULT_FETCH_SIZE)) {
+			while (rs.next()) {
+				trace.fetched();
+				long value = rs.getLong(1);
+				result.add(value, rs.wasNull());
+				trace.mapped();
 			}
+			trace.fetched();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
 		}
+		trace.finish(result.size());
+		return result;
+	}
+
+	/**
+	 * Values of a single column as unboxed ints.
+	 *
+	 * @see #pluckLongs(String)
+	 */
+	public IntColumn pluckInts(String column) throws SQLException {
+		IntColumn result = new IntColumn(getPluckCapacity());
+		QueryTrace trace = startTrace();
+		try (ResultSet rs = pluckQuery(column).execute(trace, DEFAULT_FETCH_SIZE)) {
+			while (rs.next()) {
+				trace.fetched();
+				int value = rs.getInt(1);
+				result.add(value, rs.wasNull());
+				trace.mapped();
+			}
+			trace.fetched();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		trace.finish(result.size());
+		return result;
+	}
+
+	/**
+	 * Values of a single column as unboxed doubles.
+	 *
+	 * @see #pluckLongs(String)
+	 */
+	public DoubleColumn pluckDoubles(String column) throws SQLException {
+		DoubleColumn result = new DoubleColumn(getPluckCapacity());
+		QueryTrace trace = startTrace();
+		try (ResultSet rs = pluckQuery(column).execute(trace, DEFAULT_FETCH_SIZE)) {
+			while (rs.next()) {
+				trace.fetched();
+				double value = rs.getDouble(1);
+				result.add(value, rs.wasNull());
+				trace.mapped();
+			}
+			trace.fetched();
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		trace.finish(result.size());
 		return result;
 	}
 	
-	private static Set<String> getColumns(ResultSet rs) throws SQLException {
-		Set<String> columns = new HashSet<>();
-		ResultSetMetaData meta = rs.getMetaData();
-		for (int i = 1, n = meta.getColumnCount(); i <= n; ++ i) {
-			columns.add(meta.getColumnName(i));
+	/**
+	 * Compiles the query into a reusable {@link PreparedQuery}. Values passed as
+	 * {@link QueryBuilder#param(String)} or {@link QueryBuilder#param(int)} become
+	 * bind slots that are filled in with {@link PreparedQuery#bind(String, Object)}.
+	 */
+	public PreparedQuery<T> compile() {
+		List<Object> args = new ArrayList<>();
+		String sql = toSQL(args);
+		return new PreparedQuery<T>(con, factory, QueryEvent.Operation.SELECT, getTableName(), cls, getInclude(), sql, args.toArray());
+	}
+
+	/**
+	 * Iterates the result row by row instead of loading it into a list. The
+	 * statement and result set stay open until the iterator is exhausted or
+	 * closed. Included relations are loaded in batches of fetchSize rows.
+	 */
+	public ResultIterator<T> iterator(int fetchSize) throws SQLException {
+		if (fetchSize <= 0) {
+			throw new IllegalArgumentException("illegal fetch size: " + fetchSize);
+		}
+		QueryTrace trace = startTrace();
+		List<Object> args = new ArrayList<>();
+		String sql;
+		try {
+			sql = toSQL(args);
+		} catch (RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
+		trace.generated(sql, args);
+		return new ResultIterator<T>(con, factory, cls, getInclude(), sql, args, fetchSize, trace);
+	}
+
+	public ResultIterator<T> iterator() throws SQLException {
+		return iterator(DEFAULT_FETCH_SIZE);
+	}
+
+	/**
+	 * Lazy stream of the result. Close the stream (e.g. with try-with-resources)
+	 * to release the statement if it isn't consumed completely.
+	 */
+	public Stream<T> stream(int fetchSize) throws SQLException {
+		final ResultIterator<T> iter = iterator(fetchSize);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(iter::close);
+	}
+
+	public Stream<T> stream() throws SQLException {
+		return stream(DEFAULT_FETCH_SIZE);
+	}
+
+	public void forEach(Consumer<? super T> action) throws SQLException {
+		try (ResultIterator<T> iter = iterator()) {
+			while (iter.hasNext()) {
+				action.accept(iter.next());
+			}
 		}
-		
-		return columns;
 	}
 
+	/**
+	 * Executes the query and returns the open result set. Listeners get an
+	 * event with an unknown row count right after the execution.
+	 */
 	public ResultSet execute() throws SQLException {
-		return prepare().executeQuery();
+		QueryTrace trace = startTrace();
+		ResultSet rs = execute(trace, 0);
+		trace.finish(-1);
+		return rs;
+	}
+
+	private QueryTrace startTrace() {
+		return QueryTrace.start(factory, QueryEvent.Operation.SELECT, getTableName(), null);
+	}
+
+	/**
+	 * Executes the query, records the generate, prepare and execute phases
+	 * and reports failures to the trace.
+	 *
+	 * @param fetchSize fetch size to set on the statement, 0 for the driver default
+	 */
+	private ResultSet execute(QueryTrace trace, int fetchSize) throws SQLException {
+		return execute(trace, fetchSize, 0);
+	}
+
+	/**
+	 * Same as {@link #execute(QueryTrace, int)}, but reads the result from
+	 * the factory's result cache if the entity opted in, or puts at most
+	 * maxRows rows (0 for all) into it. Streaming queries with a fetch size
+	 * and queries in a transaction aren't cached.
+	 */
+	private ResultSet execute(QueryTrace trace, int fetchSize, int maxRows) throws SQLException {
+		try {
+			List<Object> args = new ArrayList<>();
+			String sql = toSQL(args);
+			trace.generated(sql, args);
+
+			ResultCache cache = factory.getResultCache();
+			int cacheSeconds = cache != null && cls != null && fetchSize == 0 ? EntityMeta.get(cls).getCacheSeconds() : 0;
+			List<Object> key = null;
+			long generation = 0;
+			if (cacheSeconds > 0 && con.getAutoCommit()) {
+				key = Arrays.<Object>asList(sql, args, maxRows);
+				ResultSet rs = cache.get(key);
+				if (rs != null) {
+					trace.prepared();
+					trace.executed();
+					return rs;
+				}
+				generation = cache.getGeneration(getTableName());
+			}
+
+			PreparedStatement stmt = Util.prepare(con, sql, args);
+			try {
+				// close the statement together with the result set
+				stmt.closeOnCompletion();
+				if (fetchSize > 0) {
+					stmt.setFetchSize(fetchSize);
+				}
+				if (key != null && maxRows > 0) {
+					stmt.setMaxRows(maxRows);
+				}
+				trace.prepared();
+				ResultSet rs = stmt.executeQuery();
+				trace.executed();
+				if (key != null) {
+					rs = cache.put(key, getTableName(), generation, cacheSeconds, rs);
+				}
+				return rs;
+			} catch (SQLException | RuntimeException e) {
+				stmt.close();
+				throw e;
+			}
+		} catch (SQLException | RuntimeException e) {
+			trace.fail(e);
+			throw e;
+		}
 	}
 
 	public String toSQL(List<Object> args) {
@@ -482,15 +941,7 @@ public class SelectBuilder<T> extends QueryBuilderBase<SelectBuilder<T>> {
 			buf.append(order);
 		}
 
-		if (offset >= 0) {
-			buf.append(" OFFSET ");
-			buf.append(offset);
-		}
-
-		if (limit >= 0) {
-			buf.append(" LIMIT ");
-			buf.append(limit);
-		}
+		config.limit(offset, limit, buf);
 
 		return buf.toString();
 	}
@@ -0,0 +1,330 @@
+package io.github.panzi.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Opt-in cache of prepared statements for a single connection.
+ *
+ * <p>{@link #wrap(Connection, int)} returns a connection whose
+ * prepareStatement(sql) hands out cached statements. Closing such a statement
+ * clears its parameters and puts it back into the cache instead of closing it.
+ * At most maxSize idle statements are kept; the least recently used ones are
+ * closed when the cache is full. Closing the connection closes all cached
+ * statements.</p>
+ *
+ * <pre>
+ * Connection con = StatementCache.wrap(dataSource.getConnection(), 64);
+ * QueryBuilder query = QueryBuilder.query(con);
+ * ...
+ * StatementCache cache = StatementCache.of(con);
+ * System.out.println(cache.getHits() + " / " + cache.getMisses());
+ * </pre>
+ */
+public final class StatementCache {
+	private final Connection con;
+	private final Connection proxy;
+	private final int maxSize;
+	private final LinkedHashMap<String, PreparedStatement> idle = new LinkedHashMap<>(16, 0.75f, true);
+	private boolean closed = false;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	private StatementCache(Connection con, int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("illegal cache size: " + maxSize);
+		}
+		this.con = con;
+		this.maxSize = maxSize;
+		this.proxy = (Connection) Proxy.newProxyInstance(
+				StatementCache.class.getClassLoader(),
+				new Class<?>[] { Connection.class },
+				new ConnectionHandler());
+	}
+
+	public static Connection wrap(Connection con, int maxSize) {
+		return new StatementCache(con, maxSize).proxy;
+	}
+
+	/**
+	 * The cache of a connection returned by {@link #wrap(Connection, int)}, or
+	 * null if the connection has no statement cache.
+	 */
+	public static StatementCache of(Connection con) throws SQLException {
+		if (con.isWrapperFor(StatementCache.class)) {
+			return con.unwrap(StatementCache.class);
+		}
+		return null;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized int size() {
+		return idle.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized void resetStatistics() {
+		hits = misses = evictions = 0;
+	}
+
+	private PreparedStatement checkout(String key, Method method, Object[] args) throws Throwable {
+		PreparedStatement stmt;
+		synchronized (this) {
+			stmt = idle.remove(key);
+			if (stmt != null) {
+				++ hits;
+			} else {
+				++ misses;
+			}
+		}
+
+		if (stmt == null) {
+			stmt = (PreparedStatement) invoke(method, con, args);
+		}
+
+		return (PreparedStatement) Proxy.newProxyInstance(
+				StatementCache.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class },
+				new StatementHandler(key, stmt));
+	}
+
+	private void release(String key, PreparedStatement stmt) throws SQLException {
+		PreparedStatement evicted = null;
+		synchronized (this) {
+			if (!closed && !idle.containsKey(key)) {
+				idle.put(key, stmt);
+				stmt = null;
+
+				if (idle.size() > maxSize) {
+					Iterator<PreparedStatement> iter = idle.values().iterator();
+					evicted = iter.next();
+					iter.remove();
+					++ evictions;
+				}
+			}
+		}
+
+		if (stmt != null) {
+			// same SQL is already cached or the connection is closed
+			stmt.close();
+		}
+
+		if (evicted != null) {
+			evicted.close();
+		}
+	}
+
+	private void close() throws SQLException {
+		List<PreparedStatement> statements;
+		synchronized (this) {
+			closed = true;
+			statements = new ArrayList<>(idle.values());
+			idle.clear();
+		}
+
+		SQLException error = null;
+		for (PreparedStatement stmt : statements) {
+			try {
+				stmt.close();
+			} catch (SQLException e) {
+				if (error == null) {
+					error = e;
+				} else {
+					error.setNextException(e);
+				}
+			}
+		}
+
+		try {
+			con.close();
+		} catch (SQLException e) {
+			if (error == null) {
+				error = e;
+			} else {
+				error.setNextException(e);
+			}
+		}
+
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private final class ConnectionHandler implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if (name.equals("prepareStatement") && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer))) {
+				String key = args.length == 1 ? (String) args[0] : args[1] + ":" + args[0];
+				return checkout(key, method, args);
+			} else if (name.equals("close") && args == null) {
+				StatementCache.this.close();
+				return null;
+			} else if (name.equals("unwrap") && args[0] == StatementCache.class) {
+				return StatementCache.this;
+			} else if (name.equals("isWrapperFor") && args[0] == StatementCache.class) {
+				return true;
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+
+			return StatementCache.invoke(method, con, args);
+		}
+	}
+
+	private final class StatementHandler implements InvocationHandler {
+		private final String key;
+		private final PreparedStatement stmt;
+		private final int fetchSize;
+		private final int maxRows;
+		private final int queryTimeout;
+		private boolean released = false;
+		private boolean closeOnCompletion = false;
+		private boolean dirty = false;
+		private boolean batched = false;
+		private ResultSet resultSet = null;
+
+		StatementHandler(String key, PreparedStatement stmt) throws SQLException {
+			this.key = key;
+			this.stmt = stmt;
+			this.fetchSize = stmt.getFetchSize();
+			this.maxRows = stmt.getMaxRows();
+			this.queryTimeout = stmt.getQueryTimeout();
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if (name.equals("close")) {
+				release();
+				return null;
+			} else if (name.equals("isClosed")) {
+				return released;
+			} else if (name.equals("equals")) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+
+			if (released) {
+				throw new SQLException("statement is closed");
+			}
+
+			if (name.equals("closeOnCompletion")) {
+				closeOnCompletion = true;
+				return null;
+			} else if (name.equals("isCloseOnCompletion")) {
+				return closeOnCompletion;
+			} else if (name.equals("getConnection")) {
+				return StatementCache.this.proxy;
+			} else if (name.equals("setFetchSize") || name.equals("setMaxRows") || name.equals("setQueryTimeout")) {
+				dirty = true;
+			} else if (name.equals("addBatch")) {
+				batched = true;
+			}
+
+			Object result = StatementCache.invoke(method, stmt, args);
+
+			if (result instanceof ResultSet) {
+				resultSet = (ResultSet) result;
+				if (name.equals("executeQuery") && closeOnCompletion) {
+					return wrapResultSet(resultSet, (PreparedStatement) proxy);
+				}
+			}
+
+			return result;
+		}
+
+		private void release() throws SQLException {
+			if (released) {
+				return;
+			}
+			released = true;
+
+			try {
+				if (resultSet != null) {
+					resultSet.close();
+					resultSet = null;
+				}
+				stmt.clearParameters();
+				if (batched) {
+					stmt.clearBatch();
+				}
+				if (dirty) {
+					stmt.setFetchSize(fetchSize);
+					stmt.setMaxRows(maxRows);
+					stmt.setQueryTimeout(queryTimeout);
+				}
+			} catch (SQLException | RuntimeException e) {
+				stmt.close();
+				throw e;
+			}
+
+			StatementCache.this.release(key, stmt);
+		}
+	}
+
+	/**
+	 * Result set that closes its (cached) statement when closed, for statements
+	 * that were flagged with closeOnCompletion().
+	 */
+	private static ResultSet wrapResultSet(final ResultSet rs, final PreparedStatement stmt) {
+		return (ResultSet) Proxy.newProxyInstance(
+				StatementCache.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						String name = method.getName();
+						if (name.equals("close")) {
+							stmt.close();
+							return null;
+						} else if (name.equals("getStatement")) {
+							return stmt;
+						} else if (name.equals("equals")) {
+							return proxy == args[0];
+						} else if (name.equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						}
+						return StatementCache.invoke(method, rs, args);
+					}
+				});
+	}
+}
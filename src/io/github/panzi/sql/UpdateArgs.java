@@ -2,6 +2,7 @@ package io.github.panzi.sql;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +41,18 @@ public class UpdateArgs {
 		return builder.insert(tablename, args);
 	}
 
+	public PreparedQuery<Object> compileUpdate() {
+		List<Object> args = new ArrayList<>();
+		String sql = toUpdateSQL(args);
+		return new PreparedQuery<Object>(builder.con, builder.factory, QueryEvent.Operation.UPDATE, tablename, null, Collections.<String>emptySet(), sql, args.toArray());
+	}
+
+	public PreparedQuery<Object> compileInsert() {
+		List<Object> args = new ArrayList<>();
+		String sql = toInsertSQL(args);
+		return new PreparedQuery<Object>(builder.con, builder.factory, QueryEvent.Operation.INSERT, tablename, null, Collections.<String>emptySet(), sql, args.toArray());
+	}
+
 	public String toUpdateSQL(List<Object> outputArgs) {
 		return builder.toUpdateSQL(tablename, args, outputArgs);
 	}
@@ -4,6 +4,12 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
 import java.lang.annotation.Retention;
 
+/**
+ * Mapping of a property, listed in {@link Meta#fields()}. It can also
+ * annotate constructor parameters (or record components): if all parameters
+ * of a constructor are annotated, rows are mapped by passing the columns to
+ * that constructor. Such parameters must be mapped to values.
+ */
 @Retention(RUNTIME)
 public @interface Field {
 	String name();
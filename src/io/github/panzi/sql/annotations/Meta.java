@@ -11,5 +11,18 @@ import java.lang.annotation.Target;
 public @interface Meta {
 	String tableName() default "";
 	boolean onlyDeclared() default false;
+
+	/**
+	 * Remember the column values of loaded objects, so that update(Object)
+	 * only writes changed columns and skips objects that didn't change.
+	 */
+	boolean trackChanges() default false;
+
+	/**
+	 * Keep query results of this class in the factory's
+	 * {@link io.github.panzi.sql.ResultCache} for this many seconds.
+	 * 0 disables caching.
+	 */
+	int cacheSeconds() default 0;
 	Field[] fields() default {};
 }
@@ -2,6 +2,7 @@ package io.github.panzi.sql.config;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
 
 public abstract class Config {
 	public static final Config SQL99 = new SQL99Config();
@@ -9,6 +10,11 @@ public abstract class Config {
 	public static final Config DB2   = new DB2Config();
 	public static final Config POSTGRE_SQL          = new PostgreSQLConfig();
 	public static final Config MICROSOFT_SQL_SERVER = new MicrosoftSQLServerConfig();
+
+	/**
+	 * Primary key column of entities.
+	 */
+	protected static final String PRIMARY_KEY = "id";
 	
 	/**
 	 * SQL99 table/column name quoting.
@@ -20,6 +26,260 @@ public abstract class Config {
 
 	public abstract void arrayPattern(int length, StringBuilder output);
 
+	/**
+	 * Fetch size to set on a statement so that the driver streams the result
+	 * instead of reading it into memory at once.
+	 * 
+	 * @param fetchSize requested number of rows per round trip
+	 */
+	public int getStreamingFetchSize(int fetchSize) {
+		return fetchSize;
+	}
+
+	/**
+	 * Whether no other statement can run on the connection while a result
+	 * set streamed with {@link #getStreamingFetchSize(int)} is open.
+	 */
+	public boolean streamingBlocksConnection() {
+		return false;
+	}
+
+	/**
+	 * Whether the driver only honors the fetch size inside a transaction.
+	 */
+	public boolean streamingNeedsTransaction() {
+		return false;
+	}
+
+	/**
+	 * Maximum number of bind parameters in a single statement.
+	 */
+	public int getMaxParameters() {
+		return 999;
+	}
+
+	/**
+	 * Whether INSERT supports more than one row in VALUES.
+	 */
+	public boolean supportsMultiRowInsert() {
+		return true;
+	}
+
+	/**
+	 * Maximum number of rows in a multi-row INSERT.
+	 */
+	public int getMaxInsertRows() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Appends the LIMIT and OFFSET clauses, in this order because MySQL and
+	 * SQLite accept no other. A negative value means none.
+	 */
+	public void limit(long offset, long limit, StringBuilder output) {
+		if (limit >= 0) {
+			output.append(" LIMIT ");
+			output.append(limit);
+		}
+
+		if (offset >= 0) {
+			output.append(" OFFSET ");
+			output.append(offset);
+		}
+	}
+
+	/**
+	 * Whether row values can be compared with &lt; and &gt;, as in
+	 * (a, b) &gt; (?, ?). Otherwise keyset pagination expands the comparison
+	 * into OR conditions.
+	 */
+	public boolean supportsRowValueComparison() {
+		return false;
+	}
+
+	/**
+	 * Whether the database has SQL arrays that can be bound as a parameter.
+	 */
+	public boolean supportsArrays() {
+		return false;
+	}
+
+	/**
+	 * Whether INSERT can return the generated key with a clause appended by
+	 * {@link #appendOutputClause(String, StringBuilder)} and
+	 * {@link #appendReturningClause(String, StringBuilder)}. The statement
+	 * is then executed as a query. Otherwise the JDBC generated keys are read.
+	 */
+	public boolean supportsReturning() {
+		return false;
+	}
+
+	/**
+	 * Whether the rows returned by a multi-row INSERT are in VALUES order,
+	 * so keys can be matched to rows. If not, multi-row INSERTs use
+	 * {@link #supportsNumberedReturning()} or fall back to JDBC batches.
+	 */
+	public boolean isReturningOrdered() {
+		return false;
+	}
+
+	/**
+	 * Appended between the column list and VALUES of an INSERT that returns
+	 * the given column.
+	 */
+	public void appendOutputClause(String column, StringBuilder output) {
+	}
+
+	/**
+	 * Appended after the VALUES of an INSERT that returns the given column.
+	 */
+	public void appendReturningClause(String column, StringBuilder output) {
+	}
+
+	/**
+	 * Whether a multi-row INSERT with unordered returned rows can return the
+	 * position of each row along with the key, so keys can still be matched
+	 * to rows. The statement is written by
+	 * {@link #appendNumberedInsertHead(String, StringBuilder)}, the rows of
+	 * the VALUES list with their 0 based row number as an additional last
+	 * value, and {@link #appendNumberedInsertTail(List, String, StringBuilder)}.
+	 * It returns the row number as first and the column as second column.
+	 */
+	public boolean supportsNumberedReturning() {
+		return false;
+	}
+
+	public void appendNumberedInsertHead(String tablename, StringBuilder output) {
+		throw new UnsupportedOperationException("numbered returning is not supported by " + getClass().getSimpleName());
+	}
+
+	public void appendNumberedInsertTail(List<String> columns, String column, StringBuilder output) {
+		throw new UnsupportedOperationException("numbered returning is not supported by " + getClass().getSimpleName());
+	}
+
+	/**
+	 * Whether {@link #upsert(String, List, List, List, StringBuilder)} is
+	 * implemented.
+	 */
+	public boolean supportsUpsert() {
+		return false;
+	}
+
+	/**
+	 * Appends a statement that inserts one row, or updates the row that has
+	 * the same values in conflictColumns. The value expressions (usually ?)
+	 * must be written exactly once each, in the order of columns, so the bind
+	 * parameters stay in order. Only the columns accepted by
+	 * {@link #isUpdatedOnConflict(String, List)} are updated.
+	 *
+	 * @param columns all columns of the row
+	 * @param values SQL expression for each column
+	 * @param conflictColumns columns of the primary key or unique constraint
+	 */
+	public void upsert(String tablename, List<String> columns, List<String> values, List<String> conflictColumns, StringBuilder output) {
+		throw new UnsupportedOperationException("upsert is not supported by " + getClass().getSimpleName());
+	}
+
+	/**
+	 * Whether an upsert updates column of an existing row. The conflict
+	 * columns and the primary key (id) are never overwritten.
+	 */
+	protected static boolean isUpdatedOnConflict(String column, List<String> conflictColumns) {
+		return !column.equals(PRIMARY_KEY) && !conflictColumns.contains(column);
+	}
+
+	protected void appendColumns(List<String> columns, String prefix, StringBuilder output) {
+		boolean first = true;
+		for (String column : columns) {
+			if (first) {
+				first = false;
+			} else {
+				output.append(", ");
+			}
+			output.append(prefix);
+			escapeName(column, output);
+		}
+	}
+
+	protected static void appendValues(List<String> values, StringBuilder output) {
+		output.append('(');
+		boolean first = true;
+		for (String value : values) {
+			if (first) {
+				first = false;
+			} else {
+				output.append(", ");
+			}
+			output.append(value);
+		}
+		output.append(')');
+	}
+
+	protected void appendInsert(String tablename, List<String> columns, List<String> values, StringBuilder output) {
+		output.append("INSERT INTO ");
+		escapeName(tablename, output);
+		output.append(" (");
+		appendColumns(columns, "", output);
+		output.append(") VALUES ");
+		appendValues(values, output);
+	}
+
+	/**
+	 * Standard MERGE with the row as a VALUES table source.
+	 *
+	 * @param tableHint appended after the target table name, or null
+	 */
+	protected void appendMerge(String tablename, List<String> columns, List<String> values, List<String> conflictColumns,
+			String tableHint, StringBuilder output) {
+		output.append("MERGE INTO ");
+		escapeName(tablename, output);
+		if (tableHint != null) {
+			output.append(' ');
+			output.append(tableHint);
+		}
+		output.append(" AS target USING (VALUES ");
+		appendValues(values, output);
+		output.append(") AS source (");
+		appendColumns(columns, "", output);
+		output.append(") ON (");
+
+		boolean first = true;
+		for (String column : conflictColumns) {
+			if (first) {
+				first = false;
+			} else {
+				output.append(" AND ");
+			}
+			output.append("target.");
+			escapeName(column, output);
+			output.append(" = source.");
+			escapeName(column, output);
+		}
+		output.append(')');
+
+		first = true;
+		for (String column : columns) {
+			if (!isUpdatedOnConflict(column, conflictColumns)) {
+				continue;
+			}
+			if (first) {
+				output.append(" WHEN MATCHED THEN UPDATE SET ");
+				first = false;
+			} else {
+				output.append(", ");
+			}
+			escapeName(column, output);
+			output.append(" = source.");
+			escapeName(column, output);
+		}
+
+		output.append(" WHEN NOT MATCHED THEN INSERT (");
+		appendColumns(columns, "", output);
+		output.append(") VALUES (");
+		appendColumns(columns, "source.", output);
+		output.append(')');
+	}
+
 	public static Config getConfig(Connection con) throws SQLException {
 		String dbname = con.getMetaData().getDatabaseProductName();
 		return getConfig(dbname);
@@ -1,5 +1,10 @@
 package io.github.panzi.sql.config;
 
+/**
+ * Has no upsert: DB2 can't derive the types of parameter markers in the
+ * VALUES source of a MERGE (SQL0418N) and the column types aren't known
+ * when the statement is generated.
+ */
 public class DB2Config extends SQL99Config {
 	@Override
 	public void arrayPattern(int length, StringBuilder output) {
@@ -12,4 +17,14 @@ public class DB2Config extends SQL99Config {
 		}
 		output.append(']');
 	}
+
+	@Override
+	public int getMaxParameters() {
+		return 32767;
+	}
+
+	@Override
+	public boolean supportsMultiRowInsert() {
+		return true;
+	}
 }
@@ -1,6 +1,10 @@
 package io.github.panzi.sql.config;
 
+import java.util.List;
+
 public class MicrosoftSQLServerConfig extends Config {
+	private static final String ROW_NUMBER = "__row_number";
+
 	@Override
 	public void escapeName(String name, StringBuilder output) {
 		output.append('[');
@@ -21,4 +25,101 @@ public class MicrosoftSQLServerConfig extends Config {
 	public void arrayPattern(int length, StringBuilder output) {
 		throw new UnsupportedOperationException("arrays are not supported by Microsoft SQL Server");
 	}
+
+	/**
+	 * SQL Server has no LIMIT. OFFSET ... FETCH requires an ORDER BY clause.
+	 */
+	@Override
+	public void limit(long offset, long limit, StringBuilder output) {
+		if (offset < 0 && limit < 0) {
+			return;
+		}
+
+		output.append(" OFFSET ");
+		output.append(offset < 0 ? 0 : offset);
+		output.append(" ROWS");
+
+		if (limit >= 0) {
+			output.append(" FETCH NEXT ");
+			output.append(limit);
+			output.append(" ROWS ONLY");
+		}
+	}
+
+	@Override
+	public int getMaxParameters() {
+		return 2100;
+	}
+
+	/**
+	 * A table value constructor is limited to 1000 rows.
+	 */
+	@Override
+	public int getMaxInsertRows() {
+		return 1000;
+	}
+
+	/**
+	 * The JDBC driver only reports the last identity value. OUTPUT returns
+	 * them all, but not in a guaranteed order. Note that OUTPUT without INTO
+	 * fails on tables with triggers.
+	 */
+	@Override
+	public boolean supportsReturning() {
+		return true;
+	}
+
+	@Override
+	public void appendOutputClause(String column, StringBuilder output) {
+		output.append(" OUTPUT INSERTED.");
+		escapeName(column, output);
+	}
+
+	/**
+	 * A MERGE that never matches inserts all rows and, unlike INSERT, can
+	 * OUTPUT columns of the source, i.e. the row number.
+	 */
+	@Override
+	public boolean supportsNumberedReturning() {
+		return true;
+	}
+
+	@Override
+	public void appendNumberedInsertHead(String tablename, StringBuilder output) {
+		output.append("MERGE INTO ");
+		escapeName(tablename, output);
+		output.append(" AS target USING (VALUES ");
+	}
+
+	@Override
+	public void appendNumberedInsertTail(List<String> columns, String column, StringBuilder output) {
+		output.append(") AS source (");
+		appendColumns(columns, "", output);
+		output.append(", ");
+		escapeName(ROW_NUMBER, output);
+		output.append(") ON 1 = 0 WHEN NOT MATCHED THEN INSERT (");
+		appendColumns(columns, "", output);
+		output.append(") VALUES (");
+		appendColumns(columns, "source.", output);
+		output.append(") OUTPUT source.");
+		escapeName(ROW_NUMBER, output);
+		output.append(", INSERTED.");
+		escapeName(column, output);
+		output.append(';');
+	}
+
+	@Override
+	public boolean supportsUpsert() {
+		return true;
+	}
+
+	/**
+	 * MERGE with HOLDLOCK, so concurrent upserts of the same key don't both
+	 * take the insert branch.
+	 */
+	@Override
+	public void upsert(String tablename, List<String> columns, List<String> values, List<String> conflictColumns, StringBuilder output) {
+		appendMerge(tablename, columns, values, conflictColumns, "WITH (HOLDLOCK)", output);
+		output.append(';');
+	}
 }
@@ -1,5 +1,7 @@
 package io.github.panzi.sql.config;
 
+import java.util.List;
+
 public class MySQLConfig extends Config {
 	@Override
 	public void escapeName(String name, StringBuilder output) {
@@ -21,4 +23,80 @@ public class MySQLConfig extends Config {
 	public void arrayPattern(int length, StringBuilder output) {
 		throw new UnsupportedOperationException("arrays are not supported by MySQL");
 	}
+
+	/**
+	 * MySQL Connector/J only streams results with a fetch size of
+	 * Integer.MIN_VALUE. Note that no other statement can be executed on the
+	 * connection while such a result set is open.
+	 */
+	@Override
+	public int getStreamingFetchSize(int fetchSize) {
+		return Integer.MIN_VALUE;
+	}
+
+	@Override
+	public boolean streamingBlocksConnection() {
+		return true;
+	}
+
+	/**
+	 * MySQL has no OFFSET without LIMIT, the documented workaround is the
+	 * largest unsigned BIGINT as the limit.
+	 */
+	@Override
+	public void limit(long offset, long limit, StringBuilder output) {
+		if (offset >= 0 && limit < 0) {
+			output.append(" LIMIT 18446744073709551615");
+		}
+		super.limit(offset, limit, output);
+	}
+
+	@Override
+	public int getMaxParameters() {
+		return 65535;
+	}
+
+	@Override
+	public boolean supportsRowValueComparison() {
+		return true;
+	}
+
+	@Override
+	public boolean supportsUpsert() {
+		return true;
+	}
+
+	/**
+	 * MySQL can't name the conflict target, the update happens on a
+	 * duplicate of any primary key or unique index.
+	 */
+	@Override
+	public void upsert(String tablename, List<String> columns, List<String> values, List<String> conflictColumns, StringBuilder output) {
+		appendInsert(tablename, columns, values, output);
+		output.append(" ON DUPLICATE KEY UPDATE ");
+
+		boolean first = true;
+		for (String column : columns) {
+			if (!isUpdatedOnConflict(column, conflictColumns)) {
+				continue;
+			}
+			if (first) {
+				first = false;
+			} else {
+				output.append(", ");
+			}
+			escapeName(column, output);
+			output.append(" = VALUES(");
+			escapeName(column, output);
+			output.append(')');
+		}
+
+		if (first) {
+			// nothing to update, keep the row as it is
+			String column = conflictColumns.get(0);
+			escapeName(column, output);
+			output.append(" = ");
+			escapeName(column, output);
+		}
+	}
 }
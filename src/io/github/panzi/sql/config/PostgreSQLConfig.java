@@ -1,5 +1,7 @@
 package io.github.panzi.sql.config;
 
+import java.util.List;
+
 public class PostgreSQLConfig extends SQL99Config {
 	@Override
 	public void arrayPattern(int length, StringBuilder output) {
@@ -12,4 +14,81 @@ public class PostgreSQLConfig extends SQL99Config {
 		}
 		output.append(']');
 	}
+
+	/**
+	 * The PostgreSQL driver ignores the fetch size in auto-commit mode.
+	 */
+	@Override
+	public boolean streamingNeedsTransaction() {
+		return true;
+	}
+
+	@Override
+	public int getMaxParameters() {
+		return 32767;
+	}
+
+	@Override
+	public boolean supportsMultiRowInsert() {
+		return true;
+	}
+
+	@Override
+	public boolean supportsRowValueComparison() {
+		return true;
+	}
+
+	@Override
+	public boolean supportsArrays() {
+		return true;
+	}
+
+	@Override
+	public boolean supportsReturning() {
+		return true;
+	}
+
+	@Override
+	public boolean isReturningOrdered() {
+		return true;
+	}
+
+	@Override
+	public void appendReturningClause(String column, StringBuilder output) {
+		output.append(" RETURNING ");
+		escapeName(column, output);
+	}
+
+	@Override
+	public boolean supportsUpsert() {
+		return true;
+	}
+
+	@Override
+	public void upsert(String tablename, List<String> columns, List<String> values, List<String> conflictColumns, StringBuilder output) {
+		appendInsert(tablename, columns, values, output);
+		output.append(" ON CONFLICT (");
+		appendColumns(conflictColumns, "", output);
+		output.append(')');
+
+		boolean first = true;
+		for (String column : columns) {
+			if (!isUpdatedOnConflict(column, conflictColumns)) {
+				continue;
+			}
+			if (first) {
+				output.append(" DO UPDATE SET ");
+				first = false;
+			} else {
+				output.append(", ");
+			}
+			escapeName(column, output);
+			output.append(" = EXCLUDED.");
+			escapeName(column, output);
+		}
+
+		if (first) {
+			output.append(" DO NOTHING");
+		}
+	}
 }
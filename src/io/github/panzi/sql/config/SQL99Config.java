@@ -28,4 +28,12 @@ public class SQL99Config extends Config {
 	public void arrayPattern(int length, StringBuilder output) {
 		throw new UnsupportedOperationException("arrays are not supported by SQL99");
 	}
+
+	/**
+	 * Oracle (which uses this dialect) has no multi-row VALUES.
+	 */
+	@Override
+	public boolean supportsMultiRowInsert() {
+		return false;
+	}
 }
@@ -0,0 +1,146 @@
+package io.github.panzi.sql.internal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.panzi.sql.annotations.Mapping;
+
+/**
+ * Snapshots of the column values of loaded entities whose class has
+ * {@code @Meta(trackChanges = true)}. Snapshots are kept in a weak identity
+ * map, so they go away together with the entity and entities overriding
+ * equals() don't share a snapshot. A snapshot is an array with one value per
+ * {@link EntityMapping#getColumns()} entry.
+ *
+ * <p>Values are compared with equals(), arrays by content. Mutable values
+ * (like java.util.Date) that are modified in place are not detected.</p>
+ */
+public final class ChangeTracker {
+	private static final ConcurrentHashMap<IdentityKey, Object[]> SNAPSHOTS = new ConcurrentHashMap<>();
+	private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+	private ChangeTracker() {}
+
+	private static final class IdentityKey extends WeakReference<Object> {
+		private final int hash;
+
+		IdentityKey(Object object, ReferenceQueue<Object> queue) {
+			super(object, queue);
+			this.hash = System.identityHashCode(object);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof IdentityKey)) {
+				return false;
+			}
+			Object object = get();
+			return object != null && object == ((IdentityKey) other).get();
+		}
+	}
+
+	private static void expunge() {
+		Reference<?> ref;
+		while ((ref = QUEUE.poll()) != null) {
+			SNAPSHOTS.remove(ref);
+		}
+	}
+
+	/**
+	 * Current column values of the object, as they would be written.
+	 */
+	static Object[] snapshot(EntityMapping mapping, Object object) {
+		Property[] columns = mapping.getColumns();
+		Object[] values = new Object[columns.length];
+		for (int index = 0; index < columns.length; ++ index) {
+			Property property = columns[index];
+			Object value = property.get(object);
+			if (value != null) {
+				if (property.mapping == Mapping.BELONGS_TO) {
+					value = Util.getId(value);
+				} else if (value.getClass().isArray()) {
+					value = cloneArray(value);
+				}
+			}
+			values[index] = value;
+		}
+		return values;
+	}
+
+	private static Object cloneArray(Object array) {
+		int length = Array.getLength(array);
+		Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+
+	/**
+	 * Current column values of the object, or null if its class doesn't
+	 * track changes. Pass it to {@link #put(Object, Object[])} once the
+	 * values are saved.
+	 */
+	public static Object[] snapshot(Object object) {
+		EntityMapping mapping = EntityMapping.get(object.getClass());
+		return mapping.isTrackChanges() ? snapshot(mapping, object) : null;
+	}
+
+	/**
+	 * Replaces the snapshot of the object. Does nothing if snapshot is null.
+	 */
+	public static void put(Object object, Object[] snapshot) {
+		if (snapshot != null) {
+			expunge();
+			SNAPSHOTS.put(new IdentityKey(object, QUEUE), snapshot);
+		}
+	}
+
+	/**
+	 * Removes the values that didn't change since the object was loaded from
+	 * values (as returned by {@link EntityMapping#getValues(Object)}).
+	 *
+	 * @return false if the object has no snapshot, values is then unchanged
+	 */
+	public static boolean removeUnchanged(Object object, Map<String, Object> values) {
+		Object[] snapshot = SNAPSHOTS.get(new IdentityKey(object, null));
+		if (snapshot == null) {
+			return false;
+		}
+
+		Property[] columns = EntityMapping.get(object.getClass()).getColumns();
+		for (int index = 0; index < columns.length; ++ index) {
+			String columnName = columns[index].columnName;
+			if (values.containsKey(columnName) && same(values.get(columnName), snapshot[index])) {
+				values.remove(columnName);
+			}
+		}
+		return true;
+	}
+
+	private static boolean same(Object value, Object old) {
+		if (Objects.deepEquals(value, old)) {
+			return true;
+		}
+		if (value instanceof Number && old instanceof Number) {
+			// e.g. an Integer id of a relation and a Long foreign key column
+			return Util.toKey(value).equals(Util.toKey(old));
+		}
+		if (value instanceof Object[] && old instanceof Object[]) {
+			return Arrays.deepEquals((Object[]) value, (Object[]) old);
+		}
+		return false;
+	}
+}
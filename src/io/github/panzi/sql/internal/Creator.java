@@ -0,0 +1,228 @@
+package io.github.panzi.sql.internal;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+
+import io.github.panzi.sql.annotations.Field;
+import io.github.panzi.sql.annotations.Mapping;
+
+/**
+ * Constructor that takes column values as arguments: the canonical
+ * constructor of a record, or a constructor whose parameters are all
+ * annotated with {@link Field}. The constructor is resolved into a spreading
+ * method handle, so creating an object is a single invokeExact() call.
+ *
+ * <p>Records are detected reflectively, so this works on Java 8 as well.</p>
+ */
+final class Creator {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType CREATOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+	final String[] names;
+	final Field[] fields;
+	final String[] columnNames;
+	private final Class<?>[] types;
+	private final Object[] defaults;
+	private final MethodHandle handle;
+
+	private Creator(Constructor<?> constructor, String[] names, Field[] fields) {
+		Class<?>[] paramTypes = constructor.getParameterTypes();
+		this.names = names;
+		this.fields = fields;
+		this.columnNames = new String[names.length];
+		this.types = new Class<?>[names.length];
+		this.defaults = new Object[names.length];
+
+		for (int index = 0; index < names.length; ++ index) {
+			Field field = fields[index];
+			if (field != null && field.mapping() != Mapping.VALUE) {
+				throw new IllegalArgumentException("constructor parameter " + names[index] + " of " +
+						constructor.getDeclaringClass().getName() + " must be mapped to a value, not " + field.mapping());
+			}
+			String columnName = field != null ? field.columnName() : "";
+			this.columnNames[index] = columnName.length() > 0 ? columnName : Util.toSnakeCase(names[index]);
+			this.types[index] = Util.box(paramTypes[index]);
+			if (paramTypes[index].isPrimitive()) {
+				// zero value of the primitive type for NULL columns
+				this.defaults[index] = Array.get(Array.newInstance(paramTypes[index], 1), 0);
+			}
+		}
+
+		MethodHandle handle;
+		try {
+			if ((constructor.getDeclaringClass().getModifiers() & Modifier.PUBLIC) == 0 ||
+					(constructor.getModifiers() & Modifier.PUBLIC) == 0) {
+				constructor.setAccessible(true);
+			}
+			handle = LOOKUP.unreflectConstructor(constructor);
+		} catch (IllegalAccessException | RuntimeException e) {
+			throw new IllegalArgumentException("cannot access constructor of " + constructor.getDeclaringClass().getName(), e);
+		}
+		this.handle = handle.asSpreader(Object[].class, names.length).asType(CREATOR_TYPE);
+	}
+
+	/**
+	 * Creator for the class, or null if it has neither a {@link Field}
+	 * annotated constructor nor is a record.
+	 *
+	 * @param fieldDefs field definitions of the class' {@code @Meta}
+	 */
+	static Creator find(Class<?> cls, Map<String, Field> fieldDefs) {
+		Creator creator = null;
+		for (Constructor<?> constructor : cls.getDeclaredConstructors()) {
+			Field[] fields = getFields(constructor);
+			if (fields.length > 0 && !Arrays.asList(fields).contains(null)) {
+				if (creator != null) {
+					throw new IllegalArgumentException(cls.getName() + " has more than one @Field annotated constructor");
+				}
+				String[] names = new String[fields.length];
+				for (int index = 0; index < fields.length; ++ index) {
+					names[index] = fields[index].name();
+				}
+				creator = new Creator(constructor, names, fields);
+			}
+		}
+
+		if (creator == null && Records.isRecord(cls)) {
+			// annotations of record components are propagated to the canonical constructor
+			Constructor<?> constructor = Records.getCanonicalConstructor(cls);
+			String[] names = Records.getComponentNames(cls);
+			Field[] fields = getFields(constructor);
+			for (int index = 0; index < names.length; ++ index) {
+				if (fields[index] == null) {
+					fields[index] = fieldDefs.get(names[index]);
+				}
+			}
+			creator = new Creator(constructor, names, fields);
+		}
+
+		return creator;
+	}
+
+	/**
+	 * {@link Field} annotations of the parameters, null for parameters
+	 * without one.
+	 */
+	private static Field[] getFields(Constructor<?> constructor) {
+		Annotation[][] annotations = constructor.getParameterAnnotations();
+		Field[] fields = new Field[constructor.getParameterCount()];
+		// annotations of implicit parameters (e.g. of inner classes) may be missing
+		int offset = fields.length - annotations.length;
+		for (int index = 0; index < annotations.length; ++ index) {
+			for (Annotation annotation : annotations[index]) {
+				if (annotation instanceof Field) {
+					fields[index + offset] = (Field) annotation;
+					break;
+				}
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * Creates an object from the arguments. NULL is passed as the zero value
+	 * to primitive parameters and numbers are converted to the parameter type.
+	 * The array is modified.
+	 */
+	Object create(Object[] args) {
+		for (int index = 0; index < args.length; ++ index) {
+			Object arg = args[index];
+			if (arg == null) {
+				args[index] = defaults[index];
+			} else if (arg instanceof Number && !types[index].isInstance(arg)) {
+				Object value = Util.convertNumber((Number) arg, types[index]);
+				if (value != null) {
+					args[index] = value;
+				}
+			}
+		}
+
+		try {
+			return (Object) handle.invokeExact(args);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Reflective access to java.lang.Record, which doesn't exist before Java 16.
+	 */
+	static final class Records {
+		private static final Method GET_RECORD_COMPONENTS = findMethod(Class.class, "getRecordComponents");
+
+		private Records() {}
+
+		private static Method findMethod(Class<?> cls, String name) {
+			try {
+				return cls.getMethod(name);
+			} catch (NoSuchMethodException e) {
+				return null;
+			}
+		}
+
+		static boolean isRecord(Class<?> cls) {
+			Class<?> superclass = cls.getSuperclass();
+			return GET_RECORD_COMPONENTS != null && superclass != null && superclass.getName().equals("java.lang.Record");
+		}
+
+		private static Object[] getComponents(Class<?> cls) {
+			try {
+				return (Object[]) GET_RECORD_COMPONENTS.invoke(cls);
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		private static Object invoke(Object component, String name) {
+			try {
+				return component.getClass().getMethod(name).invoke(component);
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		static String[] getComponentNames(Class<?> cls) {
+			Object[] components = getComponents(cls);
+			String[] names = new String[components.length];
+			for (int index = 0; index < components.length; ++ index) {
+				names[index] = (String) invoke(components[index], "getName");
+			}
+			return names;
+		}
+
+		/**
+		 * Accessor methods of the record components, in declaration order.
+		 */
+		static Method[] getAccessors(Class<?> cls) {
+			Object[] components = getComponents(cls);
+			Method[] accessors = new Method[components.length];
+			for (int index = 0; index < components.length; ++ index) {
+				accessors[index] = (Method) invoke(components[index], "getAccessor");
+			}
+			return accessors;
+		}
+
+		static Constructor<?> getCanonicalConstructor(Class<?> cls) {
+			Object[] components = getComponents(cls);
+			Class<?>[] types = new Class<?>[components.length];
+			for (int index = 0; index < components.length; ++ index) {
+				types[index] = (Class<?>) invoke(components[index], "getType");
+			}
+			try {
+				return cls.getDeclaredConstructor(types);
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,389 @@
+package io.github.panzi.sql.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.github.panzi.sql.annotations.Field;
+import io.github.panzi.sql.annotations.Mapping;
+
+/**
+ * Mapping plan of an entity class. The class is scanned once for setters,
+ * getters, public fields and a {@link Creator} constructor (records or
+ * {@link Field} annotated parameters), which are resolved into method handles. Row
+ * mappers for concrete result set layouts are compiled from this plan and
+ * cached as well, so loading and saving rows does no reflection.
+ */
+public final class EntityMapping {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+	private static final ClassValue<EntityMapping> MAPPINGS = new ClassValue<EntityMapping>() {
+		@Override
+		protected EntityMapping computeValue(Class<?> type) {
+			return new EntityMapping(type);
+		}
+	};
+
+	private final Class<?> cls;
+	private final Property[] properties;
+	private final Property[] columns;
+	private final Property id;
+	private final GeneratedMapper<Object> generated;
+	private final boolean trackChanges;
+	private final Creator creator;
+	private volatile MethodHandle constructor = null;
+	private final ConcurrentMap<List<String>, RowMapper> rowMappers = new ConcurrentHashMap<>();
+
+	public static EntityMapping get(Class<?> cls) {
+		return MAPPINGS.get(cls);
+	}
+
+	@SuppressWarnings("unchecked")
+	private EntityMapping(Class<?> cls) {
+		this.cls = cls;
+
+		Map<String, List<Property.Setter>> setters = new LinkedHashMap<>();
+		Map<String, MethodHandle> getters = new LinkedHashMap<>();
+
+		for (Method method : cls.getMethods()) {
+			String name = method.getName();
+			if (
+					method.isVarArgs() ||
+					method.getDeclaringClass() == Object.class ||
+					(method.getModifiers() & Modifier.STATIC) != 0 ||
+					name.length() <= 3 ||
+					!Character.isUpperCase(name.charAt(3))) {
+				continue;
+			}
+
+			Class<?>[] argTypes = method.getParameterTypes();
+			if (argTypes.length == 1 && name.startsWith("set")) {
+				MethodHandle handle = unreflect(method);
+				if (handle != null) {
+					addSetter(setters, toJavaName(name), new Property.Setter(argTypes[0], handle.asType(SETTER_TYPE)));
+				}
+			} else if (argTypes.length == 0 && name.startsWith("get")) {
+				String javaName = toJavaName(name);
+				if (!getters.containsKey(javaName)) {
+					MethodHandle handle = unreflect(method);
+					if (handle != null) {
+						getters.put(javaName, handle.asType(GETTER_TYPE));
+					}
+				}
+			}
+		}
+
+		if (Creator.Records.isRecord(cls)) {
+			// record accessors aren't named like getters
+			for (Method accessor : Creator.Records.getAccessors(cls)) {
+				if (!getters.containsKey(accessor.getName())) {
+					MethodHandle handle = unreflect(accessor);
+					if (handle != null) {
+						getters.put(accessor.getName(), handle.asType(GETTER_TYPE));
+					}
+				}
+			}
+		}
+
+		for (java.lang.reflect.Field field : cls.getFields()) {
+			int modifiers = field.getModifiers();
+			if ((modifiers & (Modifier.TRANSIENT | Modifier.STATIC)) != 0) {
+				continue;
+			}
+
+			String javaName = field.getName();
+			if ((modifiers & Modifier.FINAL) == 0) {
+				try {
+					MethodHandle handle = LOOKUP.unreflectSetter(field);
+					addSetter(setters, javaName, new Property.Setter(field.getType(), handle.asType(SETTER_TYPE)));
+				} catch (IllegalAccessException e) {
+					// not accessible, hope there's a setter
+				}
+			}
+
+			if (!getters.containsKey(javaName)) {
+				try {
+					getters.put(javaName, LOOKUP.unreflectGetter(field).asType(GETTER_TYPE));
+				} catch (IllegalAccessException e) {
+					// not accessible, hope there's a getter
+				}
+			}
+		}
+
+		Set<String> names = new LinkedHashSet<>();
+		names.addAll(setters.keySet());
+		names.addAll(getters.keySet());
+
+		EntityMeta meta = EntityMeta.get(cls);
+		Map<String, Field> fieldDefs = meta.getFields();
+		Creator creator = meta.getGeneratedMapper() == null ? Creator.find(cls, fieldDefs) : null;
+		if (creator != null) {
+			// constructor parameters define fields as well
+			fieldDefs = new HashMap<>(fieldDefs);
+			for (int index = 0; index < creator.names.length; ++ index) {
+				names.add(creator.names[index]);
+				if (creator.fields[index] != null && !fieldDefs.containsKey(creator.names[index])) {
+					fieldDefs.put(creator.names[index], creator.fields[index]);
+				}
+			}
+		}
+		boolean onlyDeclared = meta.isOnlyDeclared();
+		List<Property> properties = new ArrayList<>();
+		List<Property> columns = new ArrayList<>();
+		Set<String> columnNames = new HashSet<>();
+		Property id = null;
+
+		for (String javaName : names) {
+			Field field = fieldDefs.get(javaName);
+
+			if (field == null && onlyDeclared) {
+				continue;
+			}
+
+			String columnName = "";
+			String tableName = "";
+			Mapping mapping = Mapping.VALUE;
+			Class<?> type = void.class;
+
+			if (field != null) {
+				columnName = field.columnName();
+				tableName = field.tableName();
+				mapping = field.mapping();
+				type = field.type();
+			}
+
+			if (mapping == Mapping.IGNORE) {
+				continue;
+			}
+
+			if (columnName.length() == 0) {
+				switch (mapping) {
+				case BELONGS_TO:
+					columnName = Util.toSnakeCase(javaName) + "_id";
+					break;
+
+				case HAS_ONE:
+				case HAS_MANY:
+					columnName = meta.getForeignKey();
+					break;
+
+				default:
+					columnName = Util.toSnakeCase(javaName);
+				}
+			}
+
+			List<Property.Setter> propSetters = setters.get(javaName);
+			Property property = new Property(javaName, mapping, columnName, tableName, type,
+				propSetters == null ? new Property.Setter[0] : propSetters.toArray(new Property.Setter[propSetters.size()]),
+				getters.get(javaName));
+
+			properties.add(property);
+
+			if (javaName.equals("id")) {
+				id = property;
+			}
+
+			if (property.isReadable() && (mapping == Mapping.VALUE || mapping == Mapping.BELONGS_TO) && columnNames.add(columnName)) {
+				columns.add(property);
+			}
+		}
+
+		this.properties = properties.toArray(new Property[properties.size()]);
+		this.columns = columns.toArray(new Property[columns.size()]);
+		this.id = id;
+		this.generated = (GeneratedMapper<Object>) meta.getGeneratedMapper();
+		this.trackChanges = meta.isTrackChanges();
+		this.creator = creator;
+	}
+
+	private static String toJavaName(String accessorName) {
+		return Character.toLowerCase(accessorName.charAt(3)) + accessorName.substring(4);
+	}
+
+	private static void addSetter(Map<String, List<Property.Setter>> setters, String javaName, Property.Setter setter) {
+		List<Property.Setter> list = setters.get(javaName);
+		if (list == null) {
+			list = new ArrayList<>(1);
+			setters.put(javaName, list);
+		}
+		list.add(setter);
+	}
+
+	private static MethodHandle unreflect(Method method) {
+		try {
+			return LOOKUP.unreflect(method);
+		} catch (IllegalAccessException e) {
+			// public method of a non-public class
+			try {
+				method.setAccessible(true);
+				return LOOKUP.unreflect(method);
+			} catch (IllegalAccessException | RuntimeException e2) {
+				return null;
+			}
+		}
+	}
+
+	public Class<?> getType() {
+		return cls;
+	}
+
+	/**
+	 * Compile time generated mapper, or null if the class has none.
+	 */
+	public GeneratedMapper<Object> getGeneratedMapper() {
+		return generated;
+	}
+
+	/**
+	 * Whether loaded objects get a snapshot in the {@link ChangeTracker}.
+	 */
+	public boolean isTrackChanges() {
+		return trackChanges;
+	}
+
+	/**
+	 * Constructor that takes column values, or null if objects are created
+	 * with the no-arg constructor.
+	 */
+	Creator getCreator() {
+		return creator;
+	}
+
+	public Object newInstance() {
+		if (generated != null) {
+			return generated.newInstance();
+		}
+
+		MethodHandle constructor = this.constructor;
+		if (constructor == null) {
+			try {
+				constructor = LOOKUP.findConstructor(cls, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+			this.constructor = constructor;
+		}
+
+		try {
+			return (Object) constructor.invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public Property[] getProperties() {
+		return properties;
+	}
+
+	/**
+	 * Properties that are written on INSERT and UPDATE, one per column.
+	 */
+	public Property[] getColumns() {
+		return columns;
+	}
+
+	public Property getProperty(String javaName) {
+		for (Property property : properties) {
+			if (property.name.equals(javaName)) {
+				return property;
+			}
+		}
+		return null;
+	}
+
+	public Object getId(Object object) {
+		if (id == null || !id.isReadable()) {
+			throw new IllegalArgumentException(cls.getName() + " has no id getter or field");
+		}
+		return id.get(object);
+	}
+
+	/**
+	 * Whether an id value means the object has no id yet: null, or 0 if the
+	 * id property has a primitive number type.
+	 */
+	public boolean isUnsetId(Object value) {
+		if (value == null) {
+			return true;
+		}
+		return id != null && id.declType.isPrimitive() && value instanceof Number && ((Number) value).longValue() == 0;
+	}
+
+	/**
+	 * Assigns a generated key to the id property, converting it to the
+	 * property's number type if needed. Does nothing if there is no id setter.
+	 */
+	public void setId(Object object, Object key) {
+		if (id != null && id.isWritable()) {
+			id.set(object, key);
+		}
+	}
+
+	/**
+	 * Value of the property that is written to the given column.
+	 */
+	public Object getColumnValue(Object object, String columnName) {
+		for (Property property : columns) {
+			if (property.columnName.equals(columnName)) {
+				Object value = property.get(object);
+				if (value != null && property.mapping == Mapping.BELONGS_TO) {
+					value = Util.getId(value);
+				}
+				return value;
+			}
+		}
+		throw new IllegalArgumentException(cls.getName() + " has no property for column " + columnName);
+	}
+
+	public Map<String, Object> getValues(Object object) {
+		Map<String, Object> values = new HashMap<>();
+		if (generated != null) {
+			generated.getValues(object, values);
+			return values;
+		}
+
+		for (Property property : columns) {
+			Object value = property.get(object);
+
+			if (value != null && property.mapping == Mapping.BELONGS_TO) {
+				value = Util.getId(value);
+			}
+
+			values.put(property.columnName, value);
+		}
+		return values;
+	}
+
+	public RowMapper getRowMapper(String[] layout) {
+		List<String> key = Arrays.asList(layout);
+		RowMapper mapper = rowMappers.get(key);
+
+		if (mapper == null) {
+			mapper = new RowMapper(this, layout);
+			RowMapper other = rowMappers.putIfAbsent(key, mapper);
+			if (other != null) {
+				mapper = other;
+			}
+		}
+
+		return mapper;
+	}
+}
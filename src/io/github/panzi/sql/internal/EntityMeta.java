@@ -0,0 +1,153 @@
+package io.github.panzi.sql.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.panzi.sql.annotations.Field;
+import io.github.panzi.sql.annotations.Meta;
+
+/**
+ * Annotation derived metadata of a class: table name, foreign key name,
+ * field definitions, the onlyDeclared and trackChanges flags and the result
+ * cache lifetime. Computed once per class and cached in a {@link ClassValue},
+ * so lookups never lock.
+ */
+public final class EntityMeta {
+	private static final ClassValue<EntityMeta> META = new ClassValue<EntityMeta>() {
+		@Override
+		protected EntityMeta computeValue(Class<?> type) {
+			return new EntityMeta(type);
+		}
+	};
+
+	private final Class<?> cls;
+	private final String tableName;
+	private final String foreignKey;
+	private final Map<String, Field> fields;
+	private final boolean onlyDeclared;
+	private final boolean trackChanges;
+	private final int cacheSeconds;
+	private final GeneratedMapper<?> generated;
+
+	public static EntityMeta get(Class<?> cls) {
+		return META.get(cls);
+	}
+
+	private EntityMeta(Class<?> cls) {
+		this.cls = cls;
+
+		Map<String, Field> fields = new HashMap<>();
+		String tableName = null;
+		Boolean onlyDeclared = null;
+		Boolean trackChanges = null;
+		Integer cacheSeconds = null;
+
+		for (Class<?> type = cls; type != null; type = type.getSuperclass()) {
+			Meta meta = type.getAnnotation(Meta.class);
+			if (meta != null) {
+				String name;
+				if (tableName == null && (name = meta.tableName()).length() > 0) {
+					tableName = name;
+				}
+
+				if (onlyDeclared == null) {
+					onlyDeclared = meta.onlyDeclared();
+				}
+
+				if (trackChanges == null) {
+					trackChanges = meta.trackChanges();
+				}
+
+				if (cacheSeconds == null) {
+					cacheSeconds = meta.cacheSeconds();
+				}
+
+				for (Field field : meta.fields()) {
+					if (!fields.containsKey(field.name())) {
+						fields.put(field.name(), field);
+					}
+				}
+			}
+		}
+
+		boolean derivable = !(cls.isArray() || cls.isAnonymousClass() || cls.isPrimitive());
+		GeneratedMapper<?> generated = derivable ? findGeneratedMapper(cls) : null;
+		String foreignKey = null;
+		if (generated != null) {
+			tableName = generated.getTableName();
+			foreignKey = generated.getForeignKey();
+		} else if (derivable) {
+			String name = cls.getSimpleName();
+			if (tableName == null) {
+				tableName = Util.toTableName(name);
+			}
+			foreignKey = Util.toForeignKey(name);
+		}
+
+		this.tableName = tableName;
+		this.foreignKey = foreignKey;
+		this.fields = Collections.unmodifiableMap(fields);
+		this.onlyDeclared = onlyDeclared != null && onlyDeclared;
+		this.trackChanges = trackChanges != null && trackChanges;
+		this.cacheSeconds = cacheSeconds != null ? cacheSeconds : 0;
+		this.generated = generated;
+	}
+
+	private static GeneratedMapper<?> findGeneratedMapper(Class<?> cls) {
+		Class<?> mapperClass;
+		try {
+			mapperClass = Class.forName(cls.getName() + GeneratedMapper.SUFFIX, true, cls.getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			return null;
+		}
+
+		if (!GeneratedMapper.class.isAssignableFrom(mapperClass)) {
+			return null;
+		}
+
+		try {
+			return (GeneratedMapper<?>) mapperClass.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Mapper generated by {@link io.github.panzi.sql.processor.MapperProcessor},
+	 * or null if there is none for this class.
+	 */
+	public GeneratedMapper<?> getGeneratedMapper() {
+		return generated;
+	}
+
+	public String getTableName() {
+		if (tableName == null) {
+			throw new IllegalArgumentException("cannot derive table name from " + cls.getName());
+		}
+		return tableName;
+	}
+
+	public String getForeignKey() {
+		if (foreignKey == null) {
+			throw new IllegalArgumentException("cannot derive foreign key name from " + cls.getName());
+		}
+		return foreignKey;
+	}
+
+	public Map<String, Field> getFields() {
+		return fields;
+	}
+
+	public boolean isOnlyDeclared() {
+		return onlyDeclared;
+	}
+
+	public boolean isTrackChanges() {
+		return trackChanges;
+	}
+
+	public int getCacheSeconds() {
+		return cacheSeconds;
+	}
+}
@@ -0,0 +1,38 @@
+package io.github.panzi.sql.internal;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Reflection-free mapper of an entity class, generated at compile time by
+ * {@link io.github.panzi.sql.processor.MapperProcessor}. The generated class
+ * is named like the entity class with the suffix {@link #SUFFIX} and is
+ * picked up automatically if present.
+ */
+public interface GeneratedMapper<T> {
+	String SUFFIX = "_Mapper";
+
+	String getTableName();
+
+	String getForeignKey();
+
+	/**
+	 * Columns that are assigned by {@link #load(Object, ResultSet, int[])}.
+	 */
+	String[] getColumns();
+
+	T newInstance();
+
+	/**
+	 * Assigns the non-null values of the columns of {@link #getColumns()}.
+	 *
+	 * @param indices 1-based result set index per entry of {@link #getColumns()}, 0 for absent columns
+	 */
+	void load(T object, ResultSet data, int[] indices) throws SQLException;
+
+	/**
+	 * Puts the values of all columns written on INSERT and UPDATE.
+	 */
+	void getValues(T object, Map<String, Object> values);
+}
@@ -0,0 +1,49 @@
+package io.github.panzi.sql.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Objects loaded by one query and its relation queries, keyed by class and
+ * id, so that BELONGS_TO relations referencing an already loaded row share
+ * that instance instead of fetching it again. An object only counts as
+ * loaded for an include set that is covered by the one it was loaded with.
+ * Thread safe, as relations may be loaded in parallel.
+ */
+final class IdentityMap {
+	private static final class Entry {
+		final Object object;
+		final Set<String> include;
+
+		Entry(Object object, Set<String> include) {
+			this.object = object;
+			this.include = include;
+		}
+	}
+
+	private final ConcurrentMap<List<Object>, Entry> entries = new ConcurrentHashMap<>();
+
+	private static List<Object> key(Class<?> type, Object id) {
+		return Arrays.<Object>asList(type, Util.toKey(id));
+	}
+
+	/**
+	 * Loaded object with its relations in include loaded, or null.
+	 */
+	Object get(Class<?> type, Object id, Set<String> include) {
+		Entry entry = entries.get(key(type, id));
+		return entry != null && entry.include.containsAll(include) ? entry.object : null;
+	}
+
+	void put(Object object, Object id, Set<String> include) {
+		List<Object> key = key(object.getClass(), id);
+		Entry entry = new Entry(object, include);
+		Entry other = entries.putIfAbsent(key, entry);
+		if (other != null && !other.include.containsAll(include)) {
+			entries.put(key, entry);
+		}
+	}
+}
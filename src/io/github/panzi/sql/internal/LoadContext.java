@@ -2,278 +2,413 @@ package io.github.panzi.sql.internal;
 
 import static io.github.panzi.sql.annotations.Mapping.BELONGS_TO;
 import static io.github.panzi.sql.annotations.Mapping.HAS_MANY;
-import static io.github.panzi.sql.annotations.Mapping.HAS_ONE;
-import static io.github.panzi.sql.annotations.Mapping.VALUE;
 
-import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Array;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
-import io.github.panzi.sql.QueryBuilder;
-import io.github.panzi.sql.annotations.Field;
-import io.github.panzi.sql.annotations.Mapping;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import io.github.panzi.sql.QueryBuilderFactory;
+import io.github.panzi.sql.QueryEvent;
+import io.github.panzi.sql.RecordNotFoundException;
+
+/**
+ * Loads rows into objects. Included relations are not loaded per row, instead
+ * the keys are collected by {@link #load(Object)} and {@link #loadRelations()}
+ * then fetches each relation with one IN (...) query per {@link #BATCH_SIZE}
+ * keys (fewer if the dialect's bind parameter limit is lower) and assigns
+ * the results to the loaded objects. Relation queries are created through
+ * the {@link QueryBuilderFactory} of the parent query, so the dialect isn't
+ * resolved again.
+ *
+ * <p>Objects loaded by a query and its relation queries are kept in an
+ * {@link IdentityMap} until the relations are loaded, so a BELONGS_TO
+ * reference to a row that was already loaded (e.g. in another relation or
+ * the main query) shares that instance and isn't queried again.</p>
+ */
 public class LoadContext {
-	public Connection con;
-	public Object object;
-	public ResultSet data;
-	public Set<String> availableColumns;
-	public Set<String> include;
-	public Object id = null;
-	public boolean gotId = false;
-	public Class<?> cls;
-	public Map<String, Field> fieldDefs;
-	public boolean onlyDeclared;
-
-	public LoadContext(Connection con, ResultSet data, Set<String> availableColumns, Set<String> include) {
+	public static final int BATCH_SIZE = 1000;
+
+	public final Connection con;
+	public final QueryBuilderFactory factory;
+	public final ResultSet data;
+	public final String[] columns;
+	public final Set<String> include;
+
+	private final boolean parallel;
+	private final String path;
+	private final Map<String, Set<String>> nestedInclude = new HashMap<>();
+	private final Map<Property, PendingRelation> pending = new LinkedHashMap<>();
+	private RowMapper mapper = null;
+	private PendingRelation[] relations = null;
+	private IdentityMap identities;
+
+	public LoadContext(Connection con, QueryBuilderFactory factory, ResultSet data, String[] columns, Set<String> include) {
+		this(con, factory, data, columns, include, true, null, null);
+	}
+
+	private LoadContext(Connection con, QueryBuilderFactory factory, ResultSet data, String[] columns, Set<String> include,
+			boolean parallel, String path, IdentityMap identities) {
 		this.con = con;
+		this.factory = factory;
+		this.parallel = parallel;
+		this.path = path;
+		this.identities = identities;
 		this.data = data;
-		this.availableColumns = availableColumns;
+		this.columns = columns;
 		this.include = include;
-	}
 
-	public Object getId() throws SQLException {
-		if (availableColumns.contains("id")) {
-			return data.getObject("id");
-		} else {
-			// get id from the object
-			Class<?> cls = object.getClass();
-			try {
-				try {
-					Method idMethod = cls.getMethod("getId");
-					return idMethod.invoke(object);
-				} catch (NoSuchMethodException e) {
-					java.lang.reflect.Field idField = cls.getField("id");
-					return idField.get(object);
-				}
-			} catch (IllegalAccessException | IllegalArgumentException
-					| InvocationTargetException | NoSuchFieldException e) {
-				throw new RuntimeException(e);
+		for (String includePath : include) {
+			int index = includePath.indexOf('.');
+			String name = index < 0 ? includePath : includePath.substring(0, index);
+			Set<String> nested = nestedInclude.get(name);
+			if (nested == null) {
+				nested = new HashSet<>();
+				nestedInclude.put(name, nested);
+			}
+			if (index >= 0) {
+				nested.add(includePath.substring(index + 1));
 			}
 		}
 	}
-	
-	public Object loadValue(String javaName, Class<?> declType, AnnotatedElement member) throws SQLException {
-		Object value;
-		Class<?> argType = void.class;
-		Field field = fieldDefs.get(javaName);
-		
-		if (field == null && onlyDeclared) {
-			return null;
-		}
 
-		String columnName = "";
-		String tableName = "";
-		Mapping mapping = VALUE;
-		Class<?> type = void.class;
-		
-		if (field != null) {
-			columnName = field.columnName();
-			tableName = field.tableName();
-			mapping = field.mapping();
-			type = field.type();
+	private static final class PendingRelation {
+		final Property property;
+		final int columnIndex;
+		final Set<String> include;
+		final List<Object> owners = new ArrayList<>();
+		final List<Object> keys = new ArrayList<>();
+
+		PendingRelation(Property property, int columnIndex, Set<String> include) {
+			this.property = property;
+			this.columnIndex = columnIndex;
+			this.include = include;
 		}
+	}
 
-		if (mapping == HAS_ONE) {
-			argType = type;
-
-			if (!include.contains(javaName)) {
-				return null;
+	private RowMapper getMapper(Class<?> cls) {
+		RowMapper mapper = this.mapper;
+		if (mapper == null || mapper.getMapping().getType() != cls) {
+			mapper = EntityMapping.get(cls).getRowMapper(columns);
+
+			Property[] allRelations = mapper.getRelations();
+			List<PendingRelation> relations = new ArrayList<>();
+			for (int index = 0; index < allRelations.length; ++ index) {
+				Property property = allRelations[index];
+				Set<String> nested = nestedInclude.get(property.name);
+				if (nested != null) {
+					PendingRelation relation = pending.get(property);
+					if (relation == null) {
+						relation = new PendingRelation(property, mapper.getRelationIndex(index), nested);
+						pending.put(property, relation);
+					}
+					relations.add(relation);
+				}
 			}
 
-			if (columnName.equals("")) {
-				columnName = Util.getForeignKey(cls);
-			}
+			this.relations = relations.toArray(new PendingRelation[relations.size()]);
+			this.mapper = mapper;
+		}
+		return mapper;
+	}
 
-			if (argType == void.class) {
-				argType = declType;
-			}
+	private static Class<?> getTargetType(Property property) {
+		if (property.type != void.class) {
+			return property.type;
+		}
 
-			if (!gotId) {
-				id = getId();
-				gotId = true;
+		if (property.mapping == HAS_MANY) {
+			if (property.declType.isArray()) {
+				return property.declType.getComponentType();
 			}
+			throw new RuntimeException("Could not determine the component type of @HasMany relaion. You need to set the type field.");
+		}
 
-			if (id == null) {
-				return null;
-			} else {
-				value = QueryBuilder.query(con).from(argType, tableName).whereIs(columnName, id).first();
-			}
-		} else if (mapping == HAS_MANY) {
-			Class<?> itemType = type;
-			Class<?> containerType = argType = declType;
+		return property.declType;
+	}
 
-			if (!include.contains(javaName)) {
-				return null;
-			}
+	private static String getTargetTableName(Property property, Class<?> targetType) {
+		return property.tableName.length() > 0 ? property.tableName : Util.getTableName(targetType);
+	}
 
-			if (itemType == void.class) {
-				if (argType.isArray()) {
-					itemType = argType.getComponentType();
-				} else {
-					throw new RuntimeException("Could not determine the component type of @HasMany relaion. You need to set the type field.");
-				}
-			}
+	/**
+	 * Creates an object of cls from the current row, see
+	 * {@link RowMapper#create(ResultSet)}.
+	 */
+	public Object create(Class<?> cls) throws SQLException {
+		RowMapper mapper = getMapper(cls);
+		Object object = mapper.create(data);
+		loaded(mapper, object);
+		return object;
+	}
 
-			if (tableName.equals("")) {
-				tableName = Util.getTableName(itemType);
-			}
+	public void load(Object object) throws SQLException {
+		RowMapper mapper = getMapper(object.getClass());
+		mapper.load(object, data);
+		loaded(mapper, object);
+	}
 
-			if (columnName.equals("")) {
-				columnName = Util.getForeignKey(cls);
-			}
+	/**
+	 * Registers a loaded object in the identity map and remembers its keys
+	 * for the included relations.
+	 */
+	private void loaded(RowMapper mapper, Object object) throws SQLException {
+		if (identities == null && !include.isEmpty()) {
+			identities = new IdentityMap();
+		}
 
-			if (containerType == List.class || containerType == Collection.class) {
-				containerType = ArrayList.class;
+		if (identities != null && mapper.hasIdColumn()) {
+			Object id = mapper.getId(object, data);
+			if (id != null) {
+				identities.put(object, id, include);
 			}
+		}
 
-			if (!gotId) {
-				id = getId();
-				gotId = true;
-			}
+		if (relations.length > 0) {
+			Object id = null;
+			boolean gotId = false;
 
-			if (id == null) {
-				if (containerType.isArray()) {
-					value = Array.newInstance(itemType, 0);
+			for (PendingRelation relation : relations) {
+				Object key;
+				if (relation.property.mapping == BELONGS_TO) {
+					key = data.getObject(relation.columnIndex);
 				} else {
-					value = new ArrayList<>();
-				}
-			} else {
-				List<?> values = QueryBuilder.query(con).from(itemType, tableName).whereIs(columnName, id).all();
-
-				if (containerType.isArray()) {
-					value = Array.newInstance(itemType, values.size());
-					for (int index = 0; index < values.size(); ++ index) {
-						Array.set(value, index, values.get(index));
+					if (!gotId) {
+						id = mapper.getId(object, data);
+						gotId = true;
 					}
-				} else {
-					value = values;
+					key = id;
 				}
+				relation.owners.add(object);
+				relation.keys.add(key);
 			}
-		} else if (mapping == BELONGS_TO) {
-			argType = type;
-
-			if (!include.contains(javaName)) {
-				return null;
-			}
+		}
+	}
 
-			if (columnName.equals("")) {
-				columnName = Util.toSnakeCase(javaName) + "_id";
-			}
+	/**
+	 * Loads the relations of all objects passed to {@link #load(Object)} so far.
+	 * Call this after the result set of the parent query is consumed.
+	 *
+	 * <p>If parallel includes are enabled with
+	 * {@link QueryBuilderFactory#withParallelIncludes(boolean)} and more than
+	 * one relation is included, the first relation is loaded on this
+	 * connection and each of the others on its own pooled connection. Nested
+	 * relations are loaded on the connection of their parent relation. The
+	 * calling thread holds its connection while it waits for the others, so
+	 * the pool must be larger than the number of concurrent callers.</p>
+	 */
+	public void loadRelations() throws SQLException {
+		if (pending.isEmpty()) {
+			return;
+		}
 
-			if (!availableColumns.contains(columnName)) {
-				return null;
+		List<PendingRelation> relations = new ArrayList<>();
+		for (PendingRelation relation : pending.values()) {
+			if (!relation.owners.isEmpty()) {
+				relations.add(relation);
 			}
+		}
+		pending.clear();
+		this.mapper = null;
+		this.relations = null;
 
-			if (argType == void.class) {
-				argType = declType;
+		if (relations.size() > 1 && isParallel()) {
+			loadRelationsParallel(relations);
+		} else {
+			for (PendingRelation relation : relations) {
+				assignChildren(relation, loadChildren(con, relation, parallel));
 			}
+		}
 
-			if (tableName.equals("")) {
-				tableName = Util.getTableName(argType);
-			}
+		if (path == null) {
+			// the next batch of an iterator starts with an empty map
+			identities = null;
+		}
+	}
 
-			Object otherId = data.getObject(columnName);
-			value = QueryBuilder.query(con).from(argType, tableName).find(otherId);
-		} else {
-			String sqlName = columnName;
-			argType = type;
+	private boolean isParallel() throws SQLException {
+		return parallel && factory != null && factory.isParallelIncludes() &&
+				factory.getDataSource() != null && con.getAutoCommit();
+	}
 
-			if (sqlName.length() == 0) {
-				sqlName = Util.toSnakeCase(javaName);
-			}
+	private void loadRelationsParallel(List<PendingRelation> relations) throws SQLException {
+		List<CompletableFuture<Map<Object, List<Object>>>> futures = new ArrayList<>(relations.size() - 1);
+		for (final PendingRelation relation : relations.subList(1, relations.size())) {
+			futures.add(factory.async(con -> loadChildren(con, relation, false)));
+		}
 
-			if (!availableColumns.contains(sqlName)) {
-				return null;
-			}
+		// the first relation runs on the connection this thread already holds
+		Map<Object, List<Object>> first = null;
+		Throwable error = null;
+		try {
+			first = loadChildren(con, relations.get(0), false);
+		} catch (SQLException | RuntimeException | Error e) {
+			error = e;
+		}
 
-			if (argType == void.class) {
-				argType = declType;
+		// wait for all, so no query is still running when this returns
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+		} catch (CompletionException e) {
+			if (error == null) {
+				error = e.getCause() != null ? e.getCause() : e;
 			}
+		}
 
-			value = data.getObject(sqlName);
+		if (error instanceof SQLException) {
+			throw (SQLException) error;
+		} else if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		} else if (error instanceof Error) {
+			throw (Error) error;
+		} else if (error != null) {
+			throw new RuntimeException(error);
 		}
 
-		try {
-			return argType.cast(value);
-		} catch (ClassCastException e) {
-			// didn't work, hope there's another setter with a compatible type
-			return null;
+		// objects are only modified on this thread
+		assignChildren(relations.get(0), first);
+		for (int index = 1; index < relations.size(); ++ index) {
+			assignChildren(relations.get(index), futures.get(index - 1).join());
 		}
 	}
-	
-	public void load(Object object) throws SQLException {
-		Set<String> loaded = new HashSet<>();
-		this.object = object;
-		this.cls = object.getClass();
-		this.fieldDefs = Util.getFields(cls);
-		this.onlyDeclared = Util.getOnlyDeclared(cls);
-		this.id = null;
-		this.gotId = false;
-
-		for (Method method : cls.getMethods()) {
-			Class<?>[] argTypes;
-			String name = method.getName();
-			if (
-					(argTypes = method.getParameterTypes()).length == 1 &&
-					!method.isVarArgs() &&
-					method.getDeclaringClass() != Object.class &&
-					name.length() > 3 &&
-					name.startsWith("set") &&
-					Character.isUpperCase(name.charAt(3))) {
-				String javaName = Character.toLowerCase(name.charAt(3)) + name.substring(4);
-
-				if (loaded.contains(javaName)) {
-					continue;
-				}
 
-				Object value = loadValue(javaName, argTypes[0], method);
+	private void assignChildren(PendingRelation relation, Map<Object, List<Object>> children) throws SQLException {
+		Property property = relation.property;
+		Class<?> targetType = getTargetType(property);
+
+		for (int index = 0; index < relation.owners.size(); ++ index) {
+			Object owner = relation.owners.get(index);
+			Object key = relation.keys.get(index);
+			List<Object> values = key == null ? null : children.get(Util.toKey(key));
 
-				if (value != null) {
-					try {
-						method.invoke(object, value);
-					} catch (IllegalAccessException | IllegalArgumentException e) {
-						// didn't work, hope there's another setter with a compatible type
-						continue;
-					} catch (InvocationTargetException e) {
-						throw new RuntimeException(e);
+			if (property.mapping == HAS_MANY) {
+				if (values == null) {
+					values = Collections.emptyList();
+				}
+
+				Object value;
+				if (property.declType.isArray()) {
+					value = Array.newInstance(targetType, values.size());
+					for (int itemIndex = 0; itemIndex < values.size(); ++ itemIndex) {
+						Array.set(value, itemIndex, values.get(itemIndex));
 					}
-					loaded.add(javaName);
+				} else {
+					value = new ArrayList<>(values);
+				}
+				property.set(owner, value);
+			} else if (values != null) {
+				property.set(owner, values.get(0));
+			} else if (property.mapping == BELONGS_TO && key != null) {
+				throw new RecordNotFoundException("could not find " + targetType.getSimpleName() + " with ID=" + key);
+			}
+		}
+	}
+
+	private Map<Object, List<Object>> loadChildren(Connection con, PendingRelation relation, boolean parallel) throws SQLException {
+		Property property = relation.property;
+		Class<?> type = getTargetType(property);
+		String tableName = getTargetTableName(property, type);
+		String keyColumn = property.mapping == BELONGS_TO ? "id" : property.columnName;
+
+		Map<Object, Object> uniqueKeys = new LinkedHashMap<>();
+		for (Object key : relation.keys) {
+			if (key != null) {
+				Object normKey = Util.toKey(key);
+				if (!uniqueKeys.containsKey(normKey)) {
+					uniqueKeys.put(normKey, key);
+				}
+			}
+		}
+		Map<Object, List<Object>> children = new HashMap<>();
+		if (property.mapping == BELONGS_TO && identities != null) {
+			Iterator<Map.Entry<Object, Object>> iter = uniqueKeys.entrySet().iterator();
+			while (iter.hasNext()) {
+				Map.Entry<Object, Object> entry = iter.next();
+				Object loaded = identities.get(type, entry.getKey(), relation.include);
+				if (loaded != null) {
+					children.put(entry.getKey(), Collections.singletonList(loaded));
+					iter.remove();
 				}
 			}
 		}
+		List<Object> keys = new ArrayList<>(uniqueKeys.values());
 
-		for (java.lang.reflect.Field field : cls.getFields()) {
-			if ((field.getModifiers() & Modifier.TRANSIENT) == 0) {
-				String javaName = field.getName();
+		String relationPath = path == null ? property.name : path + "." + property.name;
 
-				if (loaded.contains(javaName)) {
-					continue;
+		// the keys are the only bind parameters of the relation query
+		int batchSize = Math.max(1, Math.min(BATCH_SIZE, factory.getConfig().getMaxParameters()));
+		for (int offset = 0; offset < keys.size(); offset += batchSize) {
+			Object[] chunk = keys.subList(offset, Math.min(offset + batchSize, keys.size())).toArray();
+			QueryTrace trace = QueryTrace.start(factory, QueryEvent.Operation.SELECT, tableName, relationPath);
+			try {
+				loadChunk(con, relation, type, tableName, keyColumn, chunk, relationPath, parallel, children, trace);
+			} catch (SQLException | RuntimeException e) {
+				trace.fail(e);
+				throw e;
+			}
+		}
+
+		return children;
+	}
+
+	private void loadChunk(Connection con, PendingRelation relation, Class<?> type, String tableName, String keyColumn, Object[] chunk,
+			String relationPath, boolean parallel, Map<Object, List<Object>> children, QueryTrace trace) throws SQLException {
+		List<Object> args = new ArrayList<>();
+		String sql = factory.query(con).from(type, tableName).where("? IN (?)", new ColumnName(keyColumn), chunk).toSQL(args);
+		trace.generated(sql, args);
+
+		LoadContext ctx;
+		long rowCount = 0;
+		try (PreparedStatement stmt = Util.prepare(con, sql, args)) {
+			trace.prepared();
+			try (ResultSet rs = stmt.executeQuery()) {
+				trace.executed();
+				String[] columns = Util.getColumns(rs);
+				int keyIndex = 0;
+				for (int index = 0; index < columns.length; ++ index) {
+					if (columns[index].equals(keyColumn)) {
+						keyIndex = index + 1;
+						break;
+					}
 				}
 
-				Object value = loadValue(javaName, field.getType(), field);
+				if (keyIndex == 0) {
+					throw new SQLException("column " + keyColumn + " missing in result of relation query on " + tableName);
+				}
 
-				if (value != null) {
-					try {
-						field.set(object, value);
-					} catch (IllegalAccessException e) {
-						throw new RuntimeException(e);
+				ctx = new LoadContext(con, factory, rs, columns, relation.include, parallel, relationPath, identities);
+				while (rs.next()) {
+					trace.fetched();
+					Object child = ctx.create(type);
+
+					Object key = Util.toKey(rs.getObject(keyIndex));
+					List<Object> list = children.get(key);
+					if (list == null) {
+						list = new ArrayList<>();
+						children.put(key, list);
 					}
-					loaded.add(javaName);
+					list.add(child);
+					trace.mapped();
+					++ rowCount;
 				}
+				trace.fetched();
 			}
 		}
-		
+
+		ctx.loadRelations();
+		trace.relationsLoaded();
+		trace.finish(rowCount);
 	}
-}
\ No newline at end of file
+}
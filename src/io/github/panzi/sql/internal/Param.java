@@ -0,0 +1,33 @@
+package io.github.panzi.sql.internal;
+
+/**
+ * Placeholder for a value that is bound after the query is compiled.
+ */
+public class Param {
+	private final Object key;
+
+	public Param(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("parameter name may not be null");
+		}
+		this.key = name;
+	}
+
+	public Param(int index) {
+		if (index < 1) {
+			throw new IllegalArgumentException("illegal parameter index: " + index);
+		}
+		this.key = index;
+	}
+
+	/**
+	 * The parameter name (String) or position (Integer).
+	 */
+	public Object getKey() {
+		return key;
+	}
+
+	public String toString() {
+		return key instanceof String ? ":" + key : "?" + key;
+	}
+}
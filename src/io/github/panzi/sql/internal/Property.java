@@ -0,0 +1,103 @@
+package io.github.panzi.sql.internal;
+
+import java.lang.invoke.MethodHandle;
+
+import io.github.panzi.sql.annotations.Mapping;
+
+/**
+ * Pre-resolved mapping of one Java property (setter/getter pair or public field)
+ * to its column or relation.
+ */
+public class Property {
+	public final String name;
+	public final Mapping mapping;
+	public final String columnName;
+	public final String tableName;
+	public final Class<?> type;
+	public final Class<?> declType;
+
+	final Setter[] setters;
+	final MethodHandle getter;
+
+	Property(String name, Mapping mapping, String columnName, String tableName, Class<?> type, Setter[] setters, MethodHandle getter) {
+		this.name = name;
+		this.mapping = mapping;
+		this.columnName = columnName;
+		this.tableName = tableName;
+		this.type = type;
+		this.declType = setters.length > 0 ? setters[0].type : void.class;
+		this.setters = setters;
+		this.getter = getter;
+	}
+
+	public boolean isRelation() {
+		return mapping == Mapping.BELONGS_TO || mapping == Mapping.HAS_ONE || mapping == Mapping.HAS_MANY;
+	}
+
+	public boolean isReadable() {
+		return getter != null;
+	}
+
+	public boolean isWritable() {
+		return setters.length > 0;
+	}
+
+	/**
+	 * Assigns value using the first setter (or field) with a compatible type.
+	 * If there is none, a number is converted to the type of the first
+	 * setter with a number type, e.g. a BIGINT column to an int property.
+	 *
+	 * @return false if no setter accepts the value
+	 */
+	public boolean set(Object object, Object value) {
+		for (Setter setter : setters) {
+			if (setter.boxedType.isInstance(value)) {
+				setter.invoke(object, value);
+				return true;
+			}
+		}
+
+		if (value instanceof Number) {
+			for (Setter setter : setters) {
+				Object converted = Util.convertNumber((Number) value, setter.boxedType);
+				if (converted != null) {
+					setter.invoke(object, converted);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public Object get(Object object) {
+		try {
+			return (Object) getter.invokeExact(object);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static final class Setter {
+		final Class<?> type;
+		final Class<?> boxedType;
+		final MethodHandle handle;
+
+		Setter(Class<?> type, MethodHandle handle) {
+			this.type = type;
+			this.boxedType = Util.box(type);
+			this.handle = handle;
+		}
+
+		void invoke(Object object, Object value) {
+			try {
+				handle.invokeExact(object, value);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
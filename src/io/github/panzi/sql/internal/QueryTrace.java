@@ -0,0 +1,122 @@
+package io.github.panzi.sql.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.panzi.sql.QueryBuilderFactory;
+import io.github.panzi.sql.QueryEvent;
+import io.github.panzi.sql.QueryListener;
+
+/**
+ * Records the phase timings of one statement and reports them as a
+ * {@link QueryEvent}. Each phase method adds the time since the previous call
+ * to its phase. If no listener is registered {@link #NONE} is used, whose
+ * methods return right away, so untraced queries don't call System.nanoTime().
+ */
+public final class QueryTrace {
+	public static final QueryTrace NONE = new QueryTrace(null, null, null, null);
+
+	private final QueryListener listener;
+	private final QueryEvent.Operation operation;
+	private final String tableName;
+	private final String relationPath;
+	private final long start;
+	private long last;
+	private boolean finished = false;
+	private String sql = null;
+	private List<Object> parameters = null;
+	private long generateNanos = 0;
+	private long prepareNanos = 0;
+	private long executeNanos = 0;
+	private long fetchNanos = 0;
+	private long mappingNanos = 0;
+	private long relationNanos = 0;
+
+	private QueryTrace(QueryListener listener, QueryEvent.Operation operation, String tableName, String relationPath) {
+		this.listener = listener;
+		this.operation = operation;
+		this.tableName = tableName;
+		this.relationPath = relationPath;
+		this.start = this.last = listener == null ? 0 : System.nanoTime();
+	}
+
+	public static QueryTrace start(QueryBuilderFactory factory, QueryEvent.Operation operation, String tableName, String relationPath) {
+		QueryListener listener = factory == null ? null : factory.getListener();
+		if (listener == null) {
+			return NONE;
+		}
+		return new QueryTrace(listener, operation, tableName, relationPath);
+	}
+
+	public boolean isEnabled() {
+		return listener != null;
+	}
+
+	private long lap() {
+		long now = System.nanoTime();
+		long time = now - last;
+		last = now;
+		return time;
+	}
+
+	public void generated(String sql, List<?> parameters) {
+		if (listener == null) {
+			return;
+		}
+		this.sql = sql;
+		this.parameters = Collections.unmodifiableList(new ArrayList<Object>(parameters));
+		generateNanos += lap();
+	}
+
+	public void prepared() {
+		if (listener != null) {
+			prepareNanos += lap();
+		}
+	}
+
+	public void executed() {
+		if (listener != null) {
+			executeNanos += lap();
+		}
+	}
+
+	public void fetched() {
+		if (listener != null) {
+			fetchNanos += lap();
+		}
+	}
+
+	public void mapped() {
+		if (listener != null) {
+			mappingNanos += lap();
+		}
+	}
+
+	public void relationsLoaded() {
+		if (listener != null) {
+			relationNanos += lap();
+		}
+	}
+
+	public void finish(long rowCount) {
+		report(rowCount, null);
+	}
+
+	/**
+	 * Reports the failure, unless the trace was already finished.
+	 */
+	public void fail(Throwable error) {
+		report(-1, error);
+	}
+
+	private void report(long rowCount, Throwable error) {
+		if (listener == null || finished) {
+			return;
+		}
+		finished = true;
+		listener.onQuery(new QueryEvent(operation, tableName, relationPath, sql, parameters, rowCount,
+				generateNanos, prepareNanos, executeNanos, fetchNanos, mappingNanos, relationNanos,
+				System.nanoTime() - start, error));
+	}
+}
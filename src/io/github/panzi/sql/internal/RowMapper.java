@@ -0,0 +1,193 @@
+package io.github.panzi.sql.internal;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.panzi.sql.annotations.Mapping;
+
+/**
+ * Mapping of an entity class to one result set layout. Column indices are
+ * resolved when the mapper is compiled, so loading a row only does indexed
+ * getObject() calls and direct constructor and setter invocations, or a
+ * single call of the {@link GeneratedMapper} if the class has one.
+ */
+public final class RowMapper {
+	private final EntityMapping mapping;
+	private final Property[] values;
+	private final int[] valueIndices;
+	private final Property[] relations;
+	private final int[] relationIndices;
+	private final int idIndex;
+	private final GeneratedMapper<Object> generated;
+	private final int[] generatedIndices;
+	private final int[] foreignKeyIndices;
+	private final Creator creator;
+	private final int[] creatorIndices;
+
+	RowMapper(EntityMapping mapping, String[] layout) {
+		this.mapping = mapping;
+		this.generated = mapping.getGeneratedMapper();
+		this.creator = mapping.getCreator();
+
+		List<String> creatorColumns = new ArrayList<>();
+		if (creator != null) {
+			this.creatorIndices = new int[creator.columnNames.length];
+			for (int index = 0; index < creatorIndices.length; ++ index) {
+				creatorIndices[index] = indexOf(layout, creator.columnNames[index]);
+				creatorColumns.add(creator.columnNames[index]);
+			}
+		} else {
+			this.creatorIndices = null;
+		}
+
+		List<Property> values = new ArrayList<>();
+		List<Integer> valueIndices = new ArrayList<>();
+		List<Property> relations = new ArrayList<>();
+		List<Integer> relationIndices = new ArrayList<>();
+
+		for (Property property : mapping.getProperties()) {
+			if (!property.isWritable()) {
+				continue;
+			}
+
+			int index = indexOf(layout, property.columnName);
+			if (property.mapping == Mapping.VALUE) {
+				// columns passed to the constructor aren't set again
+				if (index > 0 && generated == null && !creatorColumns.contains(property.columnName)) {
+					values.add(property);
+					valueIndices.add(index);
+				}
+			} else if (property.mapping != Mapping.BELONGS_TO || index > 0) {
+				relations.add(property);
+				relationIndices.add(property.mapping == Mapping.BELONGS_TO ? index : 0);
+			}
+		}
+
+		this.values = values.toArray(new Property[values.size()]);
+		this.valueIndices = toIntArray(valueIndices);
+		this.relations = relations.toArray(new Property[relations.size()]);
+		this.relationIndices = toIntArray(relationIndices);
+		this.idIndex = indexOf(layout, "id");
+
+		if (generated != null) {
+			String[] generatedColumns = generated.getColumns();
+			this.generatedIndices = new int[generatedColumns.length];
+			for (int index = 0; index < generatedColumns.length; ++ index) {
+				this.generatedIndices[index] = indexOf(layout, generatedColumns[index]);
+			}
+		} else {
+			this.generatedIndices = null;
+		}
+
+		if (mapping.isTrackChanges()) {
+			// foreign keys are snapshotted from the row, the relation isn't loaded yet
+			Property[] columns = mapping.getColumns();
+			this.foreignKeyIndices = new int[columns.length];
+			for (int index = 0; index < columns.length; ++ index) {
+				if (columns[index].mapping == Mapping.BELONGS_TO) {
+					this.foreignKeyIndices[index] = indexOf(layout, columns[index].columnName);
+				}
+			}
+		} else {
+			this.foreignKeyIndices = null;
+		}
+	}
+
+	private static int indexOf(String[] layout, String column) {
+		for (int index = 0; index < layout.length; ++ index) {
+			if (layout[index].equals(column)) {
+				return index + 1;
+			}
+		}
+		return 0;
+	}
+
+	private static int[] toIntArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int index = 0; index < array.length; ++ index) {
+			array[index] = list.get(index);
+		}
+		return array;
+	}
+
+	public EntityMapping getMapping() {
+		return mapping;
+	}
+
+	/**
+	 * Relation properties that can be loaded with this layout. BELONGS_TO
+	 * relations are only listed if their foreign key column is present.
+	 */
+	public Property[] getRelations() {
+		return relations;
+	}
+
+	/**
+	 * 1-based index of the foreign key column of the relation at the given
+	 * position of {@link #getRelations()}, or 0 if it isn't a BELONGS_TO relation.
+	 */
+	public int getRelationIndex(int relation) {
+		return relationIndices[relation];
+	}
+
+	/**
+	 * Creates an object from the current row. The constructor gets the
+	 * columns of its parameters (NULL for missing ones), the other columns
+	 * are set like in {@link #load(Object, ResultSet)}.
+	 */
+	public Object create(ResultSet data) throws SQLException {
+		Object object;
+		if (creator != null) {
+			Object[] args = new Object[creatorIndices.length];
+			for (int index = 0; index < args.length; ++ index) {
+				if (creatorIndices[index] > 0) {
+					args[index] = data.getObject(creatorIndices[index]);
+				}
+			}
+			object = creator.create(args);
+		} else {
+			object = mapping.newInstance();
+		}
+		load(object, data);
+		return object;
+	}
+
+	public void load(Object object, ResultSet data) throws SQLException {
+		if (generated != null) {
+			generated.load(object, data, generatedIndices);
+		} else {
+			for (int index = 0; index < values.length; ++ index) {
+				Object value = data.getObject(valueIndices[index]);
+				if (value != null) {
+					values[index].set(object, value);
+				}
+			}
+		}
+
+		if (foreignKeyIndices != null) {
+			Object[] snapshot = ChangeTracker.snapshot(mapping, object);
+			for (int index = 0; index < foreignKeyIndices.length; ++ index) {
+				if (foreignKeyIndices[index] > 0) {
+					snapshot[index] = data.getObject(foreignKeyIndices[index]);
+				}
+			}
+			ChangeTracker.put(object, snapshot);
+		}
+	}
+
+	/**
+	 * Whether the layout has an id column.
+	 */
+	public boolean hasIdColumn() {
+		return idIndex > 0;
+	}
+
+	public Object getId(Object object, ResultSet data) throws SQLException {
+		if (idIndex > 0) {
+			return data.getObject(idIndex);
+		}
+		return mapping.getId(object);
+	}
+}
@@ -1,94 +1,57 @@
 package io.github.panzi.sql.internal;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import io.github.panzi.sql.annotations.Field;
-import io.github.panzi.sql.annotations.Meta;
 
 public abstract class Util {
 	private Util() {}
 	
-	private static final Map<Class<?>, Map<String, Field>> FIELD_DEFS = new HashMap<>();
-
 	public static boolean getOnlyDeclared(Class<?> cls) {
-		Class<?> type = cls;
-		while (type != null) {
-			Meta meta = cls.getAnnotation(Meta.class);
-			if (meta != null) {
-				return meta.onlyDeclared();
-			}
-			type = type.getSuperclass();
-		}
-		return false;
+		return EntityMeta.get(cls).isOnlyDeclared();
 	}
 
 	public static String getTableName(Class<?> cls) {
-		Class<?> type = cls;
-		while (type != null) {
-			Meta meta = cls.getAnnotation(Meta.class);
-			String name;
-			if (meta != null && (name = meta.tableName()).length() > 0) {
-				return name;
-			}
-			type = type.getSuperclass();
-		}
-
-		if (cls.isArray() || cls.isAnonymousClass() || cls.isPrimitive()) {
-			throw new IllegalArgumentException("cannot derive table name from " + cls.getName());
-		}
-		String name = cls.getSimpleName();
-		StringBuilder buf = new StringBuilder();
-		toSnakeCase(name, buf);
-		buf.append(name.endsWith("s") ? "es" : "s");
-		return buf.toString();
+		return EntityMeta.get(cls).getTableName();
 	}
 	
 	public static Map<String, Field> getFields(Class<?> cls) {
-		synchronized (FIELD_DEFS) {
-			Map<String, Field> fields = FIELD_DEFS.get(cls);
-			
-			if (fields != null) {
-				return fields;
-			}
-
-			fields = new HashMap<>();
-			FIELD_DEFS.put(cls, fields);
-
-			while (cls != null) {
-				Meta meta = cls.getAnnotation(Meta.class);
-				if (meta != null) {
-					for (Field field : meta.fields()) {
-						if (!fields.containsKey(field.name())) {
-							fields.put(field.name(), field);
-						}
-					}
-				}
-				cls = cls.getSuperclass();
-			}
-
-			return fields;
-		}
+		return EntityMeta.get(cls).getFields();
 	}
 
 	public static String getForeignKey(Class<?> cls) {
-		if (cls.isArray() || cls.isAnonymousClass() || cls.isPrimitive()) {
-			throw new IllegalArgumentException("cannot derive foreign key name from " + cls.getName());
-		}
-		String name = cls.getSimpleName();
+		return EntityMeta.get(cls).getForeignKey();
+	}
+	
+	/**
+	 * Table name derived from a simple class name: User -&gt; users
+	 */
+	public static String toTableName(String simpleName) {
 		StringBuilder buf = new StringBuilder();
-		toSnakeCase(name, buf);
+		toSnakeCase(simpleName, buf);
+		buf.append(simpleName.endsWith("s") ? "es" : "s");
+		return buf.toString();
+	}
+
+	/**
+	 * Foreign key name derived from a simple class name: User -&gt; user_id
+	 */
+	public static String toForeignKey(String simpleName) {
+		StringBuilder buf = new StringBuilder();
+		toSnakeCase(simpleName, buf);
 		buf.append("_id");
 		return buf.toString();
 	}
-	
+
 	public static String toSnakeCase(String str) {
 		StringBuilder buf = new StringBuilder();
 		toSnakeCase(str, buf);
@@ -135,12 +98,16 @@ public abstract class Util {
 	}
 
 	public static PreparedStatement prepare(Connection con, String sql, List<Object> args) throws SQLException {
-		PreparedStatement stmt = con.prepareStatement(sql);
+		return bindOrClose(con.prepareStatement(sql), args);
+	}
+
+	public static PreparedStatement prepare(Connection con, String sql, List<Object> args, int autoGeneratedKeys) throws SQLException {
+		return bindOrClose(con.prepareStatement(sql, autoGeneratedKeys), args);
+	}
+
+	private static PreparedStatement bindOrClose(PreparedStatement stmt, List<Object> args) throws SQLException {
 		try {
-			for (int index = 0; index < args.size(); ++ index) {
-				Object arg = args.get(index);
-				stmt.setObject(index + 1, arg instanceof Calendar ? ((Calendar) arg).getTime() : arg);
-			}
+			bind(stmt, args);
 			return stmt;
 		} catch (SQLException e) {
 			stmt.close();
@@ -150,21 +117,91 @@ public abstract class Util {
 			throw e;
 		}
 	}
+
+	public static void bind(PreparedStatement stmt, List<Object> args) throws SQLException {
+		for (int index = 0; index < args.size(); ++ index) {
+			Object arg = args.get(index);
+			stmt.setObject(index + 1, arg instanceof Calendar ? ((Calendar) arg).getTime() : arg);
+		}
+	}
 	
-	public static Object getId(Object object) {
-		Class<?> cls = object.getClass();
-		try {
-			Method idMethod;
-			try {
-				idMethod = cls.getMethod("getId");
-			} catch (NoSuchMethodException e) {
-				java.lang.reflect.Field idField = cls.getField("id");
-				return idField.get(object);
+	public static String[] getColumns(ResultSet rs) throws SQLException {
+		ResultSetMetaData meta = rs.getMetaData();
+		String[] columns = new String[meta.getColumnCount()];
+		for (int i = 0; i < columns.length; ++ i) {
+			columns[i] = meta.getColumnName(i + 1);
+		}
+		
+		return columns;
+	}
+
+	/**
+	 * Normalizes a key value so that ids read from different columns compare
+	 * equal even if the driver returns different integer types for them.
+	 */
+	public static Object toKey(Object value) {
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return ((Number) value).longValue();
+		} else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+			return ((BigInteger) value).longValue();
+		} else if (value instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) value;
+			if (decimal.scale() <= 0 && decimal.precision() - decimal.scale() < 19) {
+				return decimal.longValue();
 			}
-			return idMethod.invoke(object);
-		} catch (IllegalAccessException | IllegalArgumentException
-				| InvocationTargetException | NoSuchFieldException e) {
-			throw new RuntimeException(e);
 		}
+		return value;
+	}
+
+	/**
+	 * Converts a number to the given boxed number type, or returns null if
+	 * the type isn't one.
+	 */
+	public static Object convertNumber(Number number, Class<?> type) {
+		if (type == Long.class) {
+			return number.longValue();
+		} else if (type == Integer.class) {
+			return number.intValue();
+		} else if (type == Short.class) {
+			return number.shortValue();
+		} else if (type == Byte.class) {
+			return number.byteValue();
+		} else if (type == BigInteger.class) {
+			return number instanceof BigDecimal ? ((BigDecimal) number).toBigInteger() : BigInteger.valueOf(number.longValue());
+		} else if (type == BigDecimal.class) {
+			return number instanceof BigInteger ? new BigDecimal((BigInteger) number) : new BigDecimal(number.toString());
+		} else if (type == Double.class) {
+			return number.doubleValue();
+		} else if (type == Float.class) {
+			return number.floatValue();
+		}
+		return null;
+	}
+
+	public static Object getId(Object object) {
+		return EntityMapping.get(object.getClass()).getId(object);
+	}
+
+	public static Class<?> box(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return type;
+		} else if (type == int.class) {
+			return Integer.class;
+		} else if (type == long.class) {
+			return Long.class;
+		} else if (type == boolean.class) {
+			return Boolean.class;
+		} else if (type == double.class) {
+			return Double.class;
+		} else if (type == float.class) {
+			return Float.class;
+		} else if (type == short.class) {
+			return Short.class;
+		} else if (type == byte.class) {
+			return Byte.class;
+		} else if (type == char.class) {
+			return Character.class;
+		}
+		return Void.class;
 	}
 }
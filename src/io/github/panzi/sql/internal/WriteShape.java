@@ -0,0 +1,129 @@
+package io.github.panzi.sql.internal;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.github.panzi.sql.config.Config;
+
+/**
+ * Canonical column order and cached SQL of an INSERT or UPDATE of one column
+ * set of a table. Columns are ordered by name, so the same set of columns
+ * always produces the same SQL text no matter the iteration order of the
+ * values map, which keeps driver and server statement caches warm and lets
+ * identical writes be batched together.
+ */
+public final class WriteShape {
+	private static final int MAX_CACHED = 4096;
+	private static final ConcurrentMap<List<Object>, WriteShape> CACHE = new ConcurrentHashMap<>();
+
+	private final List<String> columns;
+	private final String insertInto;
+	private final String insertHead;
+	private final String insertSQL;
+	private final String updateSQL;
+
+	private WriteShape(Config config, String tablename, List<String> columns) {
+		this.columns = columns;
+
+		StringBuilder buf = new StringBuilder();
+		buf.append("INSERT INTO ");
+		config.escapeName(tablename, buf);
+		buf.append(" (");
+		for (int index = 0; index < columns.size(); ++ index) {
+			if (index > 0) {
+				buf.append(", ");
+			}
+			config.escapeName(columns.get(index), buf);
+		}
+		buf.append(')');
+		this.insertInto = buf.toString();
+		buf.append(" VALUES ");
+		this.insertHead = buf.toString();
+
+		buf.append('(');
+		for (int index = 0; index < columns.size(); ++ index) {
+			buf.append(index > 0 ? ", ?" : "?");
+		}
+		buf.append(')');
+		this.insertSQL = buf.toString();
+
+		buf.setLength(0);
+		buf.append("UPDATE ");
+		config.escapeName(tablename, buf);
+		buf.append(" SET ");
+		for (int index = 0; index < columns.size(); ++ index) {
+			if (index > 0) {
+				buf.append(", ");
+			}
+			config.escapeName(columns.get(index), buf);
+			buf.append(" = ?");
+		}
+		this.updateSQL = buf.toString();
+	}
+
+	public static WriteShape get(Config config, String tablename, Collection<String> columnSet) {
+		String[] columns = columnSet.toArray(new String[columnSet.size()]);
+		Arrays.sort(columns);
+		List<String> columnList = Collections.unmodifiableList(Arrays.asList(columns));
+		List<Object> key = Arrays.<Object>asList(config, tablename, columnList);
+
+		WriteShape shape = CACHE.get(key);
+		if (shape == null) {
+			shape = new WriteShape(config, tablename, columnList);
+			if (CACHE.size() < MAX_CACHED) {
+				WriteShape other = CACHE.putIfAbsent(key, shape);
+				if (other != null) {
+					shape = other;
+				}
+			}
+		}
+		return shape;
+	}
+
+	/**
+	 * Whether the value is bound as a single ? parameter, i.e. the cached
+	 * SQL can be used.
+	 */
+	public static boolean isScalar(Object value) {
+		return value == null || !(value.getClass().isArray() || value instanceof Collection<?> || value instanceof Name);
+	}
+
+	/**
+	 * Columns in canonical order.
+	 */
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * INSERT INTO table (columns...) without VALUES.
+	 */
+	public String getInsertInto() {
+		return insertInto;
+	}
+
+	/**
+	 * INSERT INTO table (columns...) VALUES followed by a space.
+	 */
+	public String getInsertHead() {
+		return insertHead;
+	}
+
+	/**
+	 * Single row INSERT with a ? for each column.
+	 */
+	public String getInsertSQL() {
+		return insertSQL;
+	}
+
+	/**
+	 * UPDATE ... SET column = ?, ... without a WHERE clause.
+	 */
+	public String getUpdateSQL() {
+		return updateSQL;
+	}
+}
@@ -0,0 +1,90 @@
+package io.github.panzi.sql.jmx;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of nanosecond durations. Each power of two
+ * is split into 8 buckets, so percentiles are accurate to 12.5%. Recording
+ * is a single atomic increment plus striped adders for count, sum and max.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return value < 0 ? 0 : (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	public void record(long nanos) {
+		buckets.incrementAndGet(bucket(nanos));
+		count.increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNanos() {
+		return sum.sum();
+	}
+
+	public long getMaxNanos() {
+		return max.get();
+	}
+
+	/**
+	 * Upper bound of the bucket that contains the given percentile.
+	 *
+	 * @param percentile 0 to 100
+	 */
+	public long getPercentileNanos(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int index = 0; index < BUCKETS; ++ index) {
+			counts[index] = buckets.get(index);
+			total += counts[index];
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(total * percentile / 100.0);
+		if (rank < 1) {
+			rank = 1;
+		}
+
+		long seen = 0;
+		for (int index = 0; index < BUCKETS; ++ index) {
+			seen += counts[index];
+			if (seen >= rank) {
+				return Math.min(upperBound(index), getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+}
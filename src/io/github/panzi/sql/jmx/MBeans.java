@@ -0,0 +1,30 @@
+package io.github.panzi.sql.jmx;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+final class MBeans {
+	public static final String DOMAIN = "io.github.panzi.sql";
+
+	private MBeans() {}
+
+	static ObjectName register(Object mbean, String type, String name) {
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static void unregister(ObjectName objectName) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
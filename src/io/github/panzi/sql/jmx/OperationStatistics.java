@@ -0,0 +1,72 @@
+package io.github.panzi.sql.jmx;
+
+/**
+ * Snapshot of the statistics of one operation on one table, as shown by
+ * {@link QueryStatisticsMXBean#getOperations()}. Durations are in microseconds.
+ */
+public final class OperationStatistics {
+	private final String tableName;
+	private final String operation;
+	private final long count;
+	private final long errors;
+	private final long rows;
+	private final long meanMicros;
+	private final long p50Micros;
+	private final long p99Micros;
+	private final long maxMicros;
+
+	public OperationStatistics(String tableName, String operation, long count, long errors, long rows,
+			long meanMicros, long p50Micros, long p99Micros, long maxMicros) {
+		this.tableName = tableName;
+		this.operation = operation;
+		this.count = count;
+		this.errors = errors;
+		this.rows = rows;
+		this.meanMicros = meanMicros;
+		this.p50Micros = p50Micros;
+		this.p99Micros = p99Micros;
+		this.maxMicros = maxMicros;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * SELECT, INSERT, UPDATE, UPSERT or RELATION (queries loading included relations).
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Rows read or updated.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	public long getMeanMicros() {
+		return meanMicros;
+	}
+
+	public long getP50Micros() {
+		return p50Micros;
+	}
+
+	public long getP99Micros() {
+		return p99Micros;
+	}
+
+	public long getMaxMicros() {
+		return maxMicros;
+	}
+}
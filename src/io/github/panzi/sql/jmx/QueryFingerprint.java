@@ -0,0 +1,149 @@
+package io.github.panzi.sql.jmx;
+
+import java.util.regex.Pattern;
+
+/**
+ * Normalized shape of a SQL statement. Literals and NULL become ?,
+ * parameter lists like IN (?, ?, ?) or ARRAY[?, ?] collapse to (?+) and
+ * [?+], repeated VALUES rows collapse to one, and IS NULL is treated like
+ * = ?, so all statements generated by one query in the code share a
+ * fingerprint no matter how many values or which nulls were passed.
+ * Quoted identifiers are kept as they are.
+ */
+public final class QueryFingerprint {
+	private static final Pattern PAREN_LIST = Pattern.compile("\\( ?\\?(?: ?, ?\\?)* ?\\)");
+	private static final Pattern BRACKET_LIST = Pattern.compile("\\[ ?\\?(?: ?, ?\\?)* ?\\]");
+	private static final Pattern ROWS = Pattern.compile("(\\(\\?\\+\\))(?: ?, ?\\(\\?\\+\\))+");
+	private static final Pattern IS_NULL = Pattern.compile("\\bIS NULL\\b", Pattern.CASE_INSENSITIVE);
+
+	private final String sql;
+	private final String id;
+
+	private QueryFingerprint(String sql) {
+		this.sql = sql;
+		this.id = hash(sql);
+	}
+
+	public static QueryFingerprint of(String sql) {
+		return new QueryFingerprint(normalize(sql));
+	}
+
+	public static String normalize(String sql) {
+		String normalized = replaceLiterals(sql);
+		normalized = IS_NULL.matcher(normalized).replaceAll("= ?");
+		normalized = PAREN_LIST.matcher(normalized).replaceAll("(?+)");
+		normalized = BRACKET_LIST.matcher(normalized).replaceAll("[?+]");
+		normalized = ROWS.matcher(normalized).replaceAll("$1, ...");
+		return normalized;
+	}
+
+	private static String replaceLiterals(String sql) {
+		StringBuilder buf = new StringBuilder(sql.length());
+		int len = sql.length();
+		int index = 0;
+		while (index < len) {
+			char ch = sql.charAt(index);
+			if (Character.isWhitespace(ch)) {
+				while (index < len && Character.isWhitespace(sql.charAt(index))) {
+					++ index;
+				}
+				if (buf.length() > 0 && index < len) {
+					buf.append(' ');
+				}
+			} else if (ch == '\'') {
+				// string literal, '' is an escaped quote
+				++ index;
+				while (index < len) {
+					if (sql.charAt(index) == '\'') {
+						if (index + 1 < len && sql.charAt(index + 1) == '\'') {
+							index += 2;
+						} else {
+							break;
+						}
+					} else {
+						++ index;
+					}
+				}
+				++ index;
+				buf.append('?');
+			} else if (ch == '"' || ch == '`' || ch == '[' && index + 1 < len && sql.charAt(index + 1) != '?') {
+				// quoted identifier
+				char end = ch == '[' ? ']' : ch;
+				int start = index;
+				index = sql.indexOf(end, index + 1);
+				index = index < 0 ? len : index + 1;
+				buf.append(sql, start, index);
+			} else if (Character.isDigit(ch) && !isIdentifierEnd(buf)) {
+				while (index < len && (Character.isLetterOrDigit(sql.charAt(index)) || sql.charAt(index) == '.')) {
+					++ index;
+				}
+				buf.append('?');
+			} else if (Character.isLetter(ch) || ch == '_') {
+				int start = index;
+				while (index < len && (Character.isLetterOrDigit(sql.charAt(index)) || sql.charAt(index) == '_' || sql.charAt(index) == '$')) {
+					++ index;
+				}
+				String word = sql.substring(start, index);
+				buf.append(word.equalsIgnoreCase("NULL") && !endsWithIs(buf) ? "?" : word);
+			} else {
+				buf.append(ch);
+				++ index;
+			}
+		}
+		return buf.toString();
+	}
+
+	private static boolean isIdentifierEnd(StringBuilder buf) {
+		if (buf.length() == 0) {
+			return false;
+		}
+		char ch = buf.charAt(buf.length() - 1);
+		return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$';
+	}
+
+	private static boolean endsWithIs(StringBuilder buf) {
+		int len = buf.length();
+		return len >= 3 && buf.substring(len - 3).equalsIgnoreCase("IS ") ||
+				len >= 4 && buf.substring(len - 4).equalsIgnoreCase("NOT ");
+	}
+
+	private static String hash(String sql) {
+		// 64 bit FNV-1a
+		long hash = 0xcbf29ce484222325L;
+		for (int index = 0; index < sql.length(); ++ index) {
+			hash ^= sql.charAt(index);
+			hash *= 0x100000001b3L;
+		}
+		String hex = Long.toHexString(hash);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+
+	/**
+	 * Normalized SQL.
+	 */
+	public String getSQL() {
+		return sql;
+	}
+
+	/**
+	 * 16 hex digit hash of the normalized SQL.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof QueryFingerprint && ((QueryFingerprint) other).sql.equals(sql);
+	}
+
+	@Override
+	public int hashCode() {
+		return sql.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return id + " " + sql;
+	}
+}
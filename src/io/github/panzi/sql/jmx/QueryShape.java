@@ -0,0 +1,90 @@
+package io.github.panzi.sql.jmx;
+
+/**
+ * Snapshot of the statistics of one statement shape, see
+ * {@link QueryShapeStatistics}. Durations are in microseconds.
+ */
+public final class QueryShape {
+	private final String id;
+	private final String sql;
+	private final String tableName;
+	private final String operation;
+	private final long count;
+	private final long errors;
+	private final long totalMicros;
+	private final long meanMicros;
+	private final long maxMicros;
+	private final String sampleParameters;
+	private final String callSite;
+
+	public QueryShape(String id, String sql, String tableName, String operation, long count, long errors,
+			long totalMicros, long maxMicros, String sampleParameters, String callSite) {
+		this.id = id;
+		this.sql = sql;
+		this.tableName = tableName;
+		this.operation = operation;
+		this.count = count;
+		this.errors = errors;
+		this.totalMicros = totalMicros;
+		this.meanMicros = count == 0 ? 0 : totalMicros / count;
+		this.maxMicros = maxMicros;
+		this.sampleParameters = sampleParameters;
+		this.callSite = callSite;
+	}
+
+	/**
+	 * Fingerprint id, see {@link QueryFingerprint#getId()}.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Normalized SQL.
+	 */
+	public String getSQL() {
+		return sql;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	public long getTotalMicros() {
+		return totalMicros;
+	}
+
+	public long getMeanMicros() {
+		return meanMicros;
+	}
+
+	public long getMaxMicros() {
+		return maxMicros;
+	}
+
+	/**
+	 * Parameters of the slowest execution.
+	 */
+	public String getSampleParameters() {
+		return sampleParameters;
+	}
+
+	/**
+	 * First stack frame outside of this library of the slowest execution.
+	 */
+	public String getCallSite() {
+		return callSite;
+	}
+}
@@ -0,0 +1,285 @@
+package io.github.panzi.sql.jmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+import io.github.panzi.sql.QueryEvent;
+import io.github.panzi.sql.QueryListener;
+
+/**
+ * Aggregates executed statements by their {@link QueryFingerprint}, so that
+ * e.g. all IN-list lengths of one query are counted as one shape. For each
+ * shape the count, total and maximum time are kept, together with the
+ * parameters and the call site of the slowest execution. The call site is
+ * only looked up when a new maximum is recorded.
+ *
+ * <p>At most maxShapes shapes are tracked. When that limit is exceeded the
+ * least frequent quarter is dropped.</p>
+ *
+ * <pre>
+ * QueryShapeStatistics shapes = QueryShapeStatistics.register("main", 1000, 20);
+ * QueryBuilderFactory factory = QueryBuilderFactory.create(dataSource).withListener(shapes);
+ * ...
+ * System.out.println(shapes.dump());
+ * </pre>
+ */
+public class QueryShapeStatistics implements QueryShapeStatisticsMXBean, QueryListener {
+	public static final int DEFAULT_MAX_SHAPES = 1000;
+	public static final int DEFAULT_TOP = 20;
+
+	private static final int MAX_SAMPLE_PARAMETERS = 20;
+	private static final int MAX_SAMPLE_LENGTH = 100;
+	private static final String PACKAGE = "io.github.panzi.sql.";
+
+	private static final class Sample {
+		final long nanos;
+		final String parameters;
+		final String callSite;
+
+		Sample(long nanos, String parameters, String callSite) {
+			this.nanos = nanos;
+			this.parameters = parameters;
+			this.callSite = callSite;
+		}
+	}
+
+	private static final class Entry {
+		final QueryFingerprint fingerprint;
+		final String tableName;
+		final String operation;
+		final LongAdder count = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+		final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		final AtomicReference<Sample> sample = new AtomicReference<>();
+
+		Entry(QueryFingerprint fingerprint, String tableName, String operation) {
+			this.fingerprint = fingerprint;
+			this.tableName = tableName;
+			this.operation = operation;
+		}
+
+		QueryShape snapshot() {
+			Sample sample = this.sample.get();
+			return new QueryShape(fingerprint.getId(), fingerprint.getSQL(), tableName, operation,
+					count.sum(), errors.sum(), totalNanos.sum() / 1000, maxNanos.get() / 1000,
+					sample == null ? null : sample.parameters, sample == null ? null : sample.callSite);
+		}
+	}
+
+	private final int maxShapes;
+	private final int top;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, QueryFingerprint> fingerprints = new ConcurrentHashMap<>();
+	private ObjectName objectName = null;
+
+	public QueryShapeStatistics() {
+		this(DEFAULT_MAX_SHAPES, DEFAULT_TOP);
+	}
+
+	/**
+	 * @param maxShapes maximum number of tracked shapes
+	 * @param top number of shapes in the slowest and most frequent lists
+	 */
+	public QueryShapeStatistics(int maxShapes, int top) {
+		if (maxShapes <= 0) {
+			throw new IllegalArgumentException("illegal maximum number of shapes: " + maxShapes);
+		}
+		if (top <= 0) {
+			throw new IllegalArgumentException("illegal top size: " + top);
+		}
+		this.maxShapes = maxShapes;
+		this.top = top;
+	}
+
+	/**
+	 * Creates shape statistics and registers them with the platform MBean
+	 * server as io.github.panzi.sql:type=QueryShapeStatistics,name=...
+	 */
+	public static QueryShapeStatistics register(String name, int maxShapes, int top) {
+		QueryShapeStatistics stats = new QueryShapeStatistics(maxShapes, top);
+		stats.objectName = MBeans.register(stats, "QueryShapeStatistics", name);
+		return stats;
+	}
+
+	public static QueryShapeStatistics register(String name) {
+		return register(name, DEFAULT_MAX_SHAPES, DEFAULT_TOP);
+	}
+
+	public synchronized void unregister() {
+		if (objectName != null) {
+			MBeans.unregister(objectName);
+			objectName = null;
+		}
+	}
+
+	@Override
+	public void onQuery(QueryEvent event) {
+		String sql = event.getSQL();
+		if (sql == null) {
+			return;
+		}
+
+		Entry entry = getEntry(sql, event);
+		long nanos = event.getTotalNanos();
+		entry.count.increment();
+		entry.totalNanos.add(nanos);
+		entry.maxNanos.accumulate(nanos);
+		if (event.isFailed()) {
+			entry.errors.increment();
+		}
+
+		Sample sample = entry.sample.get();
+		if (sample == null || nanos > sample.nanos) {
+			Sample newSample = new Sample(nanos, formatParameters(event.getParameters()), findCallSite());
+			while (!entry.sample.compareAndSet(sample, newSample)) {
+				sample = entry.sample.get();
+				if (sample != null && sample.nanos >= nanos) {
+					break;
+				}
+			}
+		}
+	}
+
+	private Entry getEntry(String sql, QueryEvent event) {
+		// generated SQL repeats, so the normalization is cached per SQL text
+		QueryFingerprint fingerprint = fingerprints.get(sql);
+		if (fingerprint == null) {
+			fingerprint = QueryFingerprint.of(sql);
+			if (fingerprints.size() < maxShapes * 4) {
+				fingerprints.put(sql, fingerprint);
+			}
+		}
+
+		Entry entry = entries.get(fingerprint.getId());
+		if (entry == null) {
+			String operation = event.getRelationPath() != null ? "RELATION" : event.getOperation().name();
+			entry = new Entry(fingerprint, event.getTableName(), operation);
+			Entry other = entries.putIfAbsent(fingerprint.getId(), entry);
+			if (other != null) {
+				entry = other;
+			} else if (entries.size() > maxShapes) {
+				evict();
+			}
+		}
+		return entry;
+	}
+
+	private synchronized void evict() {
+		if (entries.size() <= maxShapes) {
+			return;
+		}
+
+		List<Entry> all = new ArrayList<>(entries.values());
+		Collections.sort(all, Comparator.comparingLong(entry -> entry.count.sum()));
+		int remove = all.size() - maxShapes * 3 / 4;
+		for (int index = 0; index < remove; ++ index) {
+			entries.remove(all.get(index).fingerprint.getId());
+		}
+		fingerprints.clear();
+	}
+
+	private static String formatParameters(List<Object> parameters) {
+		if (parameters == null) {
+			return null;
+		}
+
+		StringBuilder buf = new StringBuilder("[");
+		int count = Math.min(parameters.size(), MAX_SAMPLE_PARAMETERS);
+		for (int index = 0; index < count; ++ index) {
+			if (index > 0) {
+				buf.append(", ");
+			}
+			Object value = parameters.get(index);
+			String str = value instanceof CharSequence ? "'" + value + "'" : String.valueOf(value);
+			if (str.length() > MAX_SAMPLE_LENGTH) {
+				str = str.substring(0, MAX_SAMPLE_LENGTH) + "...";
+			}
+			buf.append(str);
+		}
+		if (count < parameters.size()) {
+			buf.append(", ... (").append(parameters.size()).append(" parameters)");
+		}
+		buf.append(']');
+		return buf.toString();
+	}
+
+	private static String findCallSite() {
+		for (StackTraceElement frame : Thread.currentThread().getStackTrace()) {
+			String className = frame.getClassName();
+			if (!className.startsWith(PACKAGE) && !className.startsWith("java.") &&
+					!className.startsWith("jdk.") && !className.startsWith("sun.")) {
+				return frame.toString();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int getShapeCount() {
+		return entries.size();
+	}
+
+	private List<QueryShape> getTop(Comparator<QueryShape> order) {
+		List<QueryShape> shapes = new ArrayList<>(entries.size());
+		for (Entry entry : entries.values()) {
+			shapes.add(entry.snapshot());
+		}
+		Collections.sort(shapes, order);
+		return shapes.size() > top ? new ArrayList<>(shapes.subList(0, top)) : shapes;
+	}
+
+	@Override
+	public List<QueryShape> getSlowest() {
+		return getTop(Comparator.comparingLong(QueryShape::getTotalMicros).reversed());
+	}
+
+	@Override
+	public List<QueryShape> getMostFrequent() {
+		return getTop(Comparator.comparingLong(QueryShape::getCount).reversed());
+	}
+
+	/**
+	 * Human readable report of the slowest and most frequent shapes.
+	 */
+	@Override
+	public String dump() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("Slowest query shapes (by total time):\n");
+		dump(getSlowest(), buf);
+		buf.append("\nMost frequent query shapes:\n");
+		dump(getMostFrequent(), buf);
+		return buf.toString();
+	}
+
+	private static void dump(List<QueryShape> shapes, StringBuilder buf) {
+		int rank = 1;
+		for (QueryShape shape : shapes) {
+			buf.append(String.format("%3d. %s %s %s count=%d errors=%d total=%dus mean=%dus max=%dus%n",
+					rank ++, shape.getId(), shape.getOperation(), shape.getTableName(), shape.getCount(),
+					shape.getErrors(), shape.getTotalMicros(), shape.getMeanMicros(), shape.getMaxMicros()));
+			buf.append("     ").append(shape.getSQL()).append('\n');
+			if (shape.getSampleParameters() != null) {
+				buf.append("     slowest with ").append(shape.getSampleParameters()).append('\n');
+			}
+			if (shape.getCallSite() != null) {
+				buf.append("     at ").append(shape.getCallSite()).append('\n');
+			}
+		}
+	}
+
+	@Override
+	public void reset() {
+		entries.clear();
+		fingerprints.clear();
+	}
+}
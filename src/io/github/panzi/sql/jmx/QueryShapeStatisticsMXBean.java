@@ -0,0 +1,27 @@
+package io.github.panzi.sql.jmx;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link QueryShapeStatistics}.
+ */
+public interface QueryShapeStatisticsMXBean {
+	/**
+	 * Number of distinct statement shapes currently tracked.
+	 */
+	int getShapeCount();
+
+	/**
+	 * Shapes with the highest total time.
+	 */
+	List<QueryShape> getSlowest();
+
+	/**
+	 * Shapes with the most executions.
+	 */
+	List<QueryShape> getMostFrequent();
+
+	String dump();
+
+	void reset();
+}
@@ -0,0 +1,196 @@
+package io.github.panzi.sql.jmx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+import io.github.panzi.sql.QueryEvent;
+import io.github.panzi.sql.QueryListener;
+
+/**
+ * Query statistics for JMX: counts, rows and latency histograms by table and
+ * operation. It is a {@link QueryListener}, so it sees every statement of the
+ * builders of a factory it is registered with. Recording only touches
+ * striped counters and an atomic histogram bucket, so it can stay enabled in
+ * production.
+ *
+ * <pre>
+ * QueryStatistics stats = QueryStatistics.register("main");
+ * QueryBuilderFactory factory = QueryBuilderFactory.create(dataSource).withListener(stats);
+ * </pre>
+ *
+ * The MBean is then visible in jconsole as
+ * io.github.panzi.sql:type=QueryStatistics,name=main.
+ */
+public class QueryStatistics implements QueryStatisticsMXBean, QueryListener {
+	private static final String RELATION = "RELATION";
+
+	private static final class Entry {
+		final String tableName;
+		final String operation;
+		final LongAdder errors = new LongAdder();
+		final LongAdder rows = new LongAdder();
+		final LatencyHistogram latency = new LatencyHistogram();
+
+		Entry(String tableName, String operation) {
+			this.tableName = tableName;
+			this.operation = operation;
+		}
+	}
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final LongAdder selects = new LongAdder();
+	private final LongAdder inserts = new LongAdder();
+	private final LongAdder updates = new LongAdder();
+	private final LongAdder upserts = new LongAdder();
+	private final LongAdder relationLoads = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder rowsMapped = new LongAdder();
+	private ObjectName objectName = null;
+
+	/**
+	 * Creates statistics and registers them with the platform MBean server.
+	 */
+	public static QueryStatistics register(String name) {
+		QueryStatistics stats = new QueryStatistics();
+		stats.objectName = MBeans.register(stats, "QueryStatistics", name);
+		return stats;
+	}
+
+	public synchronized void unregister() {
+		if (objectName != null) {
+			MBeans.unregister(objectName);
+			objectName = null;
+		}
+	}
+
+	@Override
+	public void onQuery(QueryEvent event) {
+		String operation;
+		switch (event.getOperation()) {
+		case SELECT:
+			if (event.getRelationPath() != null) {
+				relationLoads.increment();
+				operation = RELATION;
+			} else {
+				selects.increment();
+				operation = "SELECT";
+			}
+			if (event.getRowCount() > 0) {
+				rowsMapped.add(event.getRowCount());
+			}
+			break;
+
+		case INSERT:
+			inserts.increment();
+			operation = "INSERT";
+			break;
+
+		case UPSERT:
+			upserts.increment();
+			operation = "UPSERT";
+			break;
+
+		default:
+			updates.increment();
+			operation = "UPDATE";
+		}
+
+		String tableName = event.getTableName() == null ? "" : event.getTableName();
+		Entry entry = getEntry(tableName, operation);
+		entry.latency.record(event.getTotalNanos());
+
+		if (event.isFailed()) {
+			errors.increment();
+			entry.errors.increment();
+		} else if (event.getRowCount() > 0) {
+			entry.rows.add(event.getRowCount());
+		}
+	}
+
+	private Entry getEntry(String tableName, String operation) {
+		String key = operation + ' ' + tableName;
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(tableName, operation);
+			Entry other = entries.putIfAbsent(key, entry);
+			if (other != null) {
+				entry = other;
+			}
+		}
+		return entry;
+	}
+
+	@Override
+	public long getSelectCount() {
+		return selects.sum();
+	}
+
+	@Override
+	public long getInsertCount() {
+		return inserts.sum();
+	}
+
+	@Override
+	public long getUpdateCount() {
+		return updates.sum();
+	}
+
+	@Override
+	public long getUpsertCount() {
+		return upserts.sum();
+	}
+
+	@Override
+	public long getRelationLoadCount() {
+		return relationLoads.sum();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	@Override
+	public long getRowsMapped() {
+		return rowsMapped.sum();
+	}
+
+	@Override
+	public List<OperationStatistics> getOperations() {
+		List<OperationStatistics> result = new ArrayList<>(entries.size());
+		for (Map.Entry<String, Entry> item : entries.entrySet()) {
+			Entry entry = item.getValue();
+			LatencyHistogram latency = entry.latency;
+			long count = latency.getCount();
+			result.add(new OperationStatistics(entry.tableName, entry.operation, count,
+					entry.errors.sum(), entry.rows.sum(),
+					count == 0 ? 0 : latency.getTotalNanos() / count / 1000,
+					latency.getPercentileNanos(50) / 1000,
+					latency.getPercentileNanos(99) / 1000,
+					latency.getMaxNanos() / 1000));
+		}
+		return result;
+	}
+
+	/**
+	 * Clears all statistics. Events that are recorded concurrently may be
+	 * partly lost.
+	 */
+	@Override
+	public void reset() {
+		entries.clear();
+		selects.reset();
+		inserts.reset();
+		updates.reset();
+		upserts.reset();
+		relationLoads.reset();
+		errors.reset();
+		rowsMapped.reset();
+	}
+}
@@ -0,0 +1,29 @@
+package io.github.panzi.sql.jmx;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link QueryStatistics}.
+ */
+public interface QueryStatisticsMXBean {
+	long getSelectCount();
+
+	long getInsertCount();
+
+	long getUpdateCount();
+
+	long getUpsertCount();
+
+	long getRelationLoadCount();
+
+	long getErrorCount();
+
+	/**
+	 * Rows read by SELECT and relation queries.
+	 */
+	long getRowsMapped();
+
+	List<OperationStatistics> getOperations();
+
+	void reset();
+}
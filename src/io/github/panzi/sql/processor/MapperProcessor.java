@@ -0,0 +1,432 @@
+package io.github.panzi.sql.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import io.github.panzi.sql.annotations.Field;
+import io.github.panzi.sql.annotations.Mapping;
+import io.github.panzi.sql.annotations.Meta;
+import io.github.panzi.sql.internal.GeneratedMapper;
+import io.github.panzi.sql.internal.Util;
+
+/**
+ * Generates a {@link GeneratedMapper} for every class annotated with
+ * {@link Meta}. The mapper does direct setter, getter and field access and
+ * carries the column list, table name and foreign key name as constants, so
+ * the class isn't scanned with reflection at runtime. The processor is
+ * optional, enable it with:
+ *
+ * <pre>
+ * javac -processor io.github.panzi.sql.processor.MapperProcessor ...
+ * </pre>
+ *
+ * <p>Abstract classes, classes that aren't public and classes without a public
+ * no-arg constructor are skipped and keep using the reflective mapping.</p>
+ */
+@SupportedAnnotationTypes("io.github.panzi.sql.annotations.Meta")
+public class MapperProcessor extends AbstractProcessor {
+	/**
+	 * Boxed types that {@link Util#convertNumber(Number, Class)} converts to.
+	 */
+	private static final Set<String> NUMBER_TYPES = new HashSet<>(Arrays.asList(
+			"java.lang.Long", "java.lang.Integer", "java.lang.Short", "java.lang.Byte",
+			"java.math.BigInteger", "java.math.BigDecimal", "java.lang.Double", "java.lang.Float"));
+
+	private static final class Accessor {
+		final String name;
+		final boolean field;
+		final TypeMirror type;
+
+		Accessor(String name, boolean field, TypeMirror type) {
+			this.name = name;
+			this.field = field;
+			this.type = type;
+		}
+	}
+
+	private static final class Column {
+		final String javaName;
+		final String columnName;
+		final Mapping mapping;
+		final List<Accessor> setters;
+		final Accessor getter;
+
+		Column(String javaName, String columnName, Mapping mapping, List<Accessor> setters, Accessor getter) {
+			this.javaName = javaName;
+			this.columnName = columnName;
+			this.mapping = mapping;
+			this.setters = setters;
+			this.getter = getter;
+		}
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(Meta.class))) {
+			if (!isMappable(type)) {
+				continue;
+			}
+
+			try {
+				generate(type);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"could not write mapper: " + e.getMessage(), type);
+			}
+		}
+		return false;
+	}
+
+	private boolean isMappable(TypeElement type) {
+		if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+			return false;
+		}
+
+		for (Element elem = type; elem instanceof TypeElement; elem = elem.getEnclosingElement()) {
+			TypeElement cls = (TypeElement) elem;
+			if (!cls.getModifiers().contains(Modifier.PUBLIC) ||
+					(cls.getNestingKind() == NestingKind.MEMBER && !cls.getModifiers().contains(Modifier.STATIC)) ||
+					cls.getNestingKind() == NestingKind.LOCAL ||
+					cls.getNestingKind() == NestingKind.ANONYMOUS) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+						"no mapper generated: class is not public or an inner class", type);
+				return false;
+			}
+		}
+
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				return true;
+			}
+		}
+
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+				"no mapper generated: class has no public no-arg constructor", type);
+		return false;
+	}
+
+	private List<Column> getColumns(TypeElement type, Map<String, Field> fieldDefs, boolean onlyDeclared) {
+		Map<String, List<Accessor>> setters = new LinkedHashMap<>();
+		Map<String, Accessor> getters = new LinkedHashMap<>();
+		List<Accessor> fieldSetters = new ArrayList<>();
+		List<String> fieldSetterNames = new ArrayList<>();
+
+		for (Element member : processingEnv.getElementUtils().getAllMembers(type)) {
+			Set<Modifier> modifiers = member.getModifiers();
+			if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC) ||
+					((TypeElement) member.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object")) {
+				continue;
+			}
+
+			String name = member.getSimpleName().toString();
+			if (member.getKind() == ElementKind.METHOD) {
+				ExecutableElement method = (ExecutableElement) member;
+				if (method.isVarArgs() || name.length() <= 3 || !Character.isUpperCase(name.charAt(3))) {
+					continue;
+				}
+
+				List<? extends VariableElement> params = method.getParameters();
+				if (params.size() == 1 && name.startsWith("set")) {
+					addAccessor(setters, toJavaName(name), new Accessor(name, false, erasure(params.get(0).asType())));
+				} else if (params.isEmpty() && name.startsWith("get") && method.getReturnType().getKind() != TypeKind.VOID) {
+					String javaName = toJavaName(name);
+					if (!getters.containsKey(javaName)) {
+						getters.put(javaName, new Accessor(name, false, erasure(method.getReturnType())));
+					}
+				}
+			} else if (member.getKind() == ElementKind.FIELD && !modifiers.contains(Modifier.TRANSIENT)) {
+				Accessor field = new Accessor(name, true, erasure(member.asType()));
+				if (!modifiers.contains(Modifier.FINAL)) {
+					// field setters come after setter methods, like in the reflective mapping
+					fieldSetters.add(field);
+					fieldSetterNames.add(name);
+				}
+				if (!getters.containsKey(name)) {
+					getters.put(name, field);
+				}
+			}
+		}
+
+		for (int index = 0; index < fieldSetters.size(); ++ index) {
+			addAccessor(setters, fieldSetterNames.get(index), fieldSetters.get(index));
+		}
+
+		Set<String> names = new LinkedHashSet<>();
+		names.addAll(setters.keySet());
+		names.addAll(getters.keySet());
+
+		List<Column> columns = new ArrayList<>();
+		for (String javaName : names) {
+			Field field = fieldDefs.get(javaName);
+
+			if (field == null && onlyDeclared) {
+				continue;
+			}
+
+			Mapping mapping = field == null ? Mapping.VALUE : field.mapping();
+			if (mapping != Mapping.VALUE && mapping != Mapping.BELONGS_TO) {
+				continue;
+			}
+
+			String columnName = field == null ? "" : field.columnName();
+			if (columnName.length() == 0) {
+				columnName = mapping == Mapping.BELONGS_TO ?
+						Util.toSnakeCase(javaName) + "_id" :
+						Util.toSnakeCase(javaName);
+			}
+
+			List<Accessor> propSetters = setters.get(javaName);
+			columns.add(new Column(javaName, columnName, mapping,
+					propSetters == null ? new ArrayList<Accessor>() : propSetters,
+					getters.get(javaName)));
+		}
+
+		return columns;
+	}
+
+	private TypeMirror erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type);
+	}
+
+	private static String toJavaName(String accessorName) {
+		return Character.toLowerCase(accessorName.charAt(3)) + accessorName.substring(4);
+	}
+
+	private static void addAccessor(Map<String, List<Accessor>> accessors, String javaName, Accessor accessor) {
+		List<Accessor> list = accessors.get(javaName);
+		if (list == null) {
+			list = new ArrayList<>(1);
+			accessors.put(javaName, list);
+		}
+		list.add(accessor);
+	}
+
+	private void generate(TypeElement type) throws IOException {
+		Map<String, Field> fieldDefs = new HashMap<>();
+		String tableName = null;
+		Boolean onlyDeclared = null;
+
+		for (TypeElement cls = type; cls != null; cls = getSuperclass(cls)) {
+			Meta meta = cls.getAnnotation(Meta.class);
+			if (meta != null) {
+				if (tableName == null && meta.tableName().length() > 0) {
+					tableName = meta.tableName();
+				}
+
+				if (onlyDeclared == null) {
+					onlyDeclared = meta.onlyDeclared();
+				}
+
+				for (Field field : meta.fields()) {
+					if (!fieldDefs.containsKey(field.name())) {
+						fieldDefs.put(field.name(), field);
+					}
+				}
+			}
+		}
+
+		String simpleName = type.getSimpleName().toString();
+		if (tableName == null) {
+			tableName = Util.toTableName(simpleName);
+		}
+		String foreignKey = Util.toForeignKey(simpleName);
+
+		List<Column> columns = getColumns(type, fieldDefs, onlyDeclared != null && onlyDeclared);
+
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		String packageName = pkg.getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String mapperName = (packageName.length() > 0 ? binaryName.substring(packageName.length() + 1) : binaryName) + GeneratedMapper.SUFFIX;
+		String entity = type.getQualifiedName().toString();
+
+		List<Column> loadColumns = new ArrayList<>();
+		List<Column> valueColumns = new ArrayList<>();
+		Set<String> valueColumnNames = new HashSet<>();
+		for (Column column : columns) {
+			if (column.mapping == Mapping.VALUE && !column.setters.isEmpty()) {
+				loadColumns.add(column);
+			}
+			if (column.getter != null && valueColumnNames.add(column.columnName)) {
+				valueColumns.add(column);
+			}
+		}
+
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(
+				packageName.length() > 0 ? packageName + "." + mapperName : mapperName, type);
+
+		StringBuilder out = new StringBuilder();
+		if (packageName.length() > 0) {
+			out.append("package ").append(packageName).append(";\n\n");
+		}
+
+		out.append("// generated by ").append(MapperProcessor.class.getName()).append("\n");
+		out.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+		out.append("public final class ").append(mapperName)
+			.append(" implements io.github.panzi.sql.internal.GeneratedMapper<").append(entity).append("> {\n");
+
+		out.append("\tprivate static final String[] COLUMNS = {");
+		for (int index = 0; index < loadColumns.size(); ++ index) {
+			if (index > 0) {
+				out.append(", ");
+			}
+			appendString(out, loadColumns.get(index).columnName);
+		}
+		out.append("};\n\n");
+
+		out.append("\t@Override\n\tpublic String getTableName() {\n\t\treturn ");
+		appendString(out, tableName);
+		out.append(";\n\t}\n\n");
+
+		out.append("\t@Override\n\tpublic String getForeignKey() {\n\t\treturn ");
+		appendString(out, foreignKey);
+		out.append(";\n\t}\n\n");
+
+		out.append("\t@Override\n\tpublic String[] getColumns() {\n\t\treturn COLUMNS.clone();\n\t}\n\n");
+
+		out.append("\t@Override\n\tpublic ").append(entity).append(" newInstance() {\n\t\treturn new ")
+			.append(entity).append("();\n\t}\n\n");
+
+		out.append("\t@Override\n\tpublic void load(").append(entity)
+			.append(" object, java.sql.ResultSet data, int[] indices) throws java.sql.SQLException {\n");
+		if (!loadColumns.isEmpty()) {
+			out.append("\t\tObject value;\n");
+		}
+		for (int index = 0; index < loadColumns.size(); ++ index) {
+			Column column = loadColumns.get(index);
+			out.append("\t\tif (indices[").append(index).append("] > 0 && (value = data.getObject(indices[")
+				.append(index).append("])) != null) {\n");
+			String keyword = "if";
+			for (Accessor setter : column.setters) {
+				String boxed = boxedName(setter.type);
+				out.append("\t\t\t").append(keyword).append(" (value instanceof ").append(boxed).append(") {\n\t\t\t\tobject.");
+				if (setter.field) {
+					out.append(setter.name).append(" = (").append(boxed).append(") value;\n");
+				} else {
+					out.append(setter.name).append("((").append(boxed).append(") value);\n");
+				}
+				out.append("\t\t\t}");
+				keyword = " else if";
+			}
+			// like Property.set(): other numbers are converted to the first numeric setter type
+			for (Accessor setter : column.setters) {
+				String boxed = boxedName(setter.type);
+				if (NUMBER_TYPES.contains(boxed)) {
+					out.append(keyword).append(" (value instanceof java.lang.Number) {\n\t\t\t\tobject.");
+					String converted = "(" + boxed + ") io.github.panzi.sql.internal.Util.convertNumber((java.lang.Number) value, " +
+							boxed + ".class)";
+					if (setter.field) {
+						out.append(setter.name).append(" = ").append(converted).append(";\n");
+					} else {
+						out.append(setter.name).append("(").append(converted).append(");\n");
+					}
+					out.append("\t\t\t}");
+					break;
+				}
+			}
+			out.append("\n\t\t}\n");
+		}
+		out.append("\t}\n\n");
+
+		out.append("\t@Override\n\tpublic void getValues(").append(entity)
+			.append(" object, java.util.Map<String, Object> values) {\n");
+		for (Column column : valueColumns) {
+			String access = column.getter.field ? "object." + column.getter.name : "object." + column.getter.name + "()";
+			out.append("\t\t");
+			if (column.mapping == Mapping.BELONGS_TO) {
+				out.append("{\n\t\t\tObject value = ").append(access).append(";\n\t\t\tvalues.put(");
+				appendString(out, column.columnName);
+				out.append(", value == null ? null : io.github.panzi.sql.internal.Util.getId(value));\n\t\t}\n");
+			} else {
+				out.append("values.put(");
+				appendString(out, column.columnName);
+				out.append(", ").append(access).append(");\n");
+			}
+		}
+		out.append("\t}\n}\n");
+
+		try (Writer writer = file.openWriter()) {
+			writer.write(out.toString());
+		}
+	}
+
+	private TypeElement getSuperclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		return (TypeElement) ((DeclaredType) superclass).asElement();
+	}
+
+	private String boxedName(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind())).getQualifiedName().toString();
+		}
+		return type.toString();
+	}
+
+	private static void appendString(StringBuilder out, String value) {
+		out.append('"');
+		for (int index = 0; index < value.length(); ++ index) {
+			char ch = value.charAt(index);
+			switch (ch) {
+			case '"':
+			case '\\':
+				out.append('\\').append(ch);
+				break;
+
+			case '\n':
+				out.append("\\n");
+				break;
+
+			case '\r':
+				out.append("\\r");
+				break;
+
+			case '\t':
+				out.append("\\t");
+				break;
+
+			default:
+				if (ch < 0x20 || ch > 0x7e) {
+					out.append(String.format("\\u%04x", (int) ch));
+				} else {
+					out.append(ch);
+				}
+			}
+		}
+		out.append('"');
+	}
+}